@@ -0,0 +1,53 @@
+// File: DatasetBenchmark.java
+// DatasetBenchmark class
+package minet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jblas.DoubleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import minet.data.MatrixDataset;
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Assembly of (shuffled) mini-batches from an in-memory MNIST-like dataset, dense and sparse.
+ * @author Phong Le
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatasetBenchmark {
+
+    @Param({"32", "128", "512"})
+    int batchsize;
+
+    MatrixDataset data;
+
+    @Setup
+    public void setup() {
+        data = new SyntheticDataset(8192, batchsize, new Random(1));
+        data.reset();
+    }
+
+    @Benchmark
+    public Pair<DoubleMatrix, DoubleMatrix> denseBatch() {
+        Pair<DoubleMatrix, DoubleMatrix> batch = data.getNextMiniBatch();
+        if (batch == null)  // end of an epoch
+            batch = data.getNextMiniBatch();
+        return batch;
+    }
+
+    @Benchmark
+    public Pair<SparseMatrix, DoubleMatrix> sparseBatch() {
+        Pair<SparseMatrix, DoubleMatrix> batch = data.getNextSparseMiniBatch();
+        if (batch == null)
+            batch = data.getNextSparseMiniBatch();
+        return batch;
+    }
+}
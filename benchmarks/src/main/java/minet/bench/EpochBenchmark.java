@@ -0,0 +1,78 @@
+// File: EpochBenchmark.java
+// EpochBenchmark class
+package minet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jblas.DoubleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import minet.backend.Backends;
+import minet.data.MatrixDataset;
+import minet.layer.*;
+import minet.layer.init.WeightInitXavier;
+import minet.loss.SoftmaxCrossEntropy;
+import minet.optim.Optimizer;
+import minet.optim.SGD;
+import minet.util.Pair;
+
+/**
+ * A full training epoch of the MNIST example network (784-500-10, SGD, batches of 128)
+ * on 4096 synthetic samples.
+ * @author Phong Le
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class EpochBenchmark {
+
+    @Param({"1"})
+    int nThreads;
+
+    @Param({"jblas"})
+    String backend;
+
+    MatrixDataset data;
+    Layer model;
+    SoftmaxCrossEntropy loss;
+    Optimizer optimizer;
+
+    @Setup
+    public void setup() {
+        Backends.set(backend);
+        org.jblas.util.Random.seed(1);
+        data = new SyntheticDataset(4096, 128, new Random(1));
+        Sequential net = new Sequential(new Layer[] {
+                new LinearReLU(784, 500, new WeightInitXavier()),
+                new Linear(500, 10, new WeightInitXavier())});
+        model = nThreads > 1 ? new DataParallel(net, nThreads) : net;
+        loss = new SoftmaxCrossEntropy();
+        optimizer = new SGD(model, 0.1);
+        data.reset();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (model instanceof DataParallel)
+            ((DataParallel)model).shutdown();
+    }
+
+    @Benchmark
+    public double epoch() {
+        double totalLoss = 0;
+        while (true) {
+            Pair<DoubleMatrix, DoubleMatrix> batch = data.getNextMiniBatch();
+            if (batch == null)
+                break;
+            optimizer.resetGradients();
+            totalLoss += loss.forward(batch.second, model.forward(batch.first));
+            model.backward(loss.backward());
+            optimizer.updateWeights();
+        }
+        return totalLoss;
+    }
+}
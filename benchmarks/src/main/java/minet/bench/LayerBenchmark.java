@@ -0,0 +1,72 @@
+// File: LayerBenchmark.java
+// LayerBenchmark class
+package minet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jblas.DoubleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import minet.backend.Backends;
+import minet.layer.*;
+import minet.layer.init.WeightInitXavier;
+
+/**
+ * Forward and forward+backward of single layers, for several batch sizes and widths
+ * (for Linear, width is both the number of inputs and of outputs).
+ * @author Phong Le
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerBenchmark {
+
+    @Param({"Linear", "ReLU", "Sigmoid", "Tanh", "Softmax"})
+    String layer;
+
+    @Param({"32", "128", "512"})
+    int batchsize;
+
+    @Param({"128", "512"})
+    int width;
+
+    @Param({"jblas"})
+    String backend;
+
+    Layer l;
+    DoubleMatrix X, gY;
+
+    @Setup
+    public void setup() {
+        Backends.set(backend);
+        org.jblas.util.Random.seed(1);
+        X = DoubleMatrix.randn(batchsize, width);
+        gY = DoubleMatrix.randn(batchsize, width);
+        l = create(layer, width);
+    }
+
+    static Layer create(String name, int width) {
+        switch (name) {
+            case "Linear": return new Linear(width, width, new WeightInitXavier());
+            case "ReLU": return new ReLU();
+            case "Sigmoid": return new Sigmoid();
+            case "Tanh": return new Tanh();
+            case "Softmax": return new Softmax();
+            default: throw new IllegalArgumentException("unknown layer " + name);
+        }
+    }
+
+    @Benchmark
+    public DoubleMatrix forward() {
+        return l.forward(X);
+    }
+
+    @Benchmark
+    public DoubleMatrix forwardBackward() {
+        l.forward(X);
+        return l.backward(gY);
+    }
+}
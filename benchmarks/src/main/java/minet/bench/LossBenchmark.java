@@ -0,0 +1,69 @@
+// File: LossBenchmark.java
+// LossBenchmark class
+package minet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jblas.DoubleMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import minet.backend.Backends;
+import minet.loss.*;
+
+/**
+ * Forward and backward of the loss functions, for several batch sizes and numbers of classes.
+ * @author Phong Le
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LossBenchmark {
+
+    @Param({"CrossEntropy", "MeanSquaredError", "SoftmaxCrossEntropy"})
+    String loss;
+
+    @Param({"32", "128", "512"})
+    int batchsize;
+
+    @Param({"10", "1000"})
+    int nClasses;
+
+    @Param({"jblas"})
+    String backend;
+
+    Loss l;
+    DoubleMatrix Y, Yhat;
+
+    @Setup
+    public void setup() {
+        Backends.set(backend);
+        Random rnd = new Random(1);
+        Y = new DoubleMatrix(batchsize, 1);
+        for (int i = 0; i < batchsize; i++) {
+            Y.data[i] = rnd.nextInt(nClasses);
+        }
+        // a probability distribution per row (also valid logits)
+        Yhat = new DoubleMatrix(batchsize, nClasses);
+        for (int i = 0; i < Yhat.length; i++) {
+            Yhat.data[i] = 1 - rnd.nextDouble();
+        }
+        Yhat.diviColumnVector(Yhat.rowSums());
+
+        switch (loss) {
+            case "CrossEntropy": l = new CrossEntropy(); break;
+            case "MeanSquaredError": l = new MeanSquaredError(); break;
+            case "SoftmaxCrossEntropy": l = new SoftmaxCrossEntropy(); break;
+            default: throw new IllegalArgumentException("unknown loss " + loss);
+        }
+    }
+
+    @Benchmark
+    public DoubleMatrix forwardBackward() {
+        l.forward(Y, Yhat);
+        return l.backward();
+    }
+}
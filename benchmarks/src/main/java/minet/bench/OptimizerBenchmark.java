@@ -0,0 +1,57 @@
+// File: OptimizerBenchmark.java
+// OptimizerBenchmark class
+package minet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import minet.layer.*;
+import minet.layer.init.WeightInitXavier;
+import minet.optim.*;
+
+/**
+ * Weight updates of the optimizers on a network of three [width x width] linear layers.
+ * @author Phong Le
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OptimizerBenchmark {
+
+    @Param({"SGD", "Nesterov", "Adam", "AdamW"})
+    String optimizer;
+
+    @Param({"128", "1024"})
+    int width;
+
+    Optimizer opt;
+
+    @Setup
+    public void setup() {
+        org.jblas.util.Random.seed(1);
+        Sequential net = new Sequential(new Layer[] {
+                new Linear(width, width, new WeightInitXavier()),
+                new Linear(width, width, new WeightInitXavier()),
+                new Linear(width, width, new WeightInitXavier())});
+        switch (optimizer) {
+            case "SGD": opt = new SGD(net, 1e-6); break;
+            case "Nesterov": opt = new SGD(net, 1e-6, 0.9, true); break;
+            case "Adam": opt = new Adam(net, 1e-6); break;
+            case "AdamW": opt = new AdamW(net, 1e-6, 0.01); break;
+            default: throw new IllegalArgumentException("unknown optimizer " + optimizer);
+        }
+    }
+
+    /**
+     * One training step's worth of optimizer work: resetting the gradients and updating the weights.
+     */
+    @Benchmark
+    public void resetAndUpdate() {
+        opt.resetGradients();
+        opt.updateWeights();
+    }
+}
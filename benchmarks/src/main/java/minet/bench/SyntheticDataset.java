@@ -0,0 +1,39 @@
+// File: SyntheticDataset.java
+// SyntheticDataset class
+package minet.bench;
+
+import java.util.Random;
+
+import minet.data.ArrayDataset;
+
+/**
+ * A random classification dataset held in memory, shaped like MNIST by default:
+ * about 80% of the features are 0, the others are uniform in (0, 1].
+ * @author Phong Le
+ */
+public class SyntheticDataset extends ArrayDataset {
+
+    public SyntheticDataset(int size, int inputDims, int nClasses, double density,
+                            int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+        this.inputDims = inputDims;
+        this.features = new double[size * inputDims];
+        this.labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            labels[i] = rnd.nextInt(nClasses);
+            for (int j = 0; j < inputDims; j++) {
+                if (rnd.nextDouble() < density)
+                    features[i * inputDims + j] = 1 - rnd.nextDouble();
+            }
+        }
+    }
+
+    public SyntheticDataset(int size, int batchsize, Random rnd) {
+        this(size, 784, 10, 0.2, batchsize, true, rnd);
+    }
+
+    @Override
+    public void fromFile(String path) {
+        throw new UnsupportedOperationException("a synthetic dataset is not loaded from file");
+    }
+}
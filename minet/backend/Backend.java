@@ -0,0 +1,150 @@
+// File: Backend.java
+// An interface for all compute backends.
+package minet.backend;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import minet.util.SparseMatrix;
+
+/**
+ * An interface for compute backends, i.e. the implementations of the matrix operations
+ * used by layers, losses and optimizers (e.g. {@link JblasBackend}).
+ * Matrices are stored in jblas {@link DoubleMatrix} (and {@link FloatMatrix}) objects, which are
+ * plain column-major arrays; a backend decides how to compute on them.
+ * The backend in use is selected with {@link Backends#set(Backend)}.
+ *
+ * Unless stated otherwise, vectors can be row or column vectors,
+ * and an output matrix can be the same object as an input matrix (i.e. in-place computation).
+ *
+ * @author Phong Le
+ */
+public interface Backend {
+
+    /**
+     * General matrix multiplication {@literal C = alpha * op(A) * op(B) + beta * C},
+     * where op(A) = A^T if transA, otherwise op(A) = A. C must not be A or B.
+     */
+    public void gemm(boolean transA, boolean transB, double alpha, DoubleMatrix A, DoubleMatrix B,
+                     double beta, DoubleMatrix C);
+
+    /**
+     * Single-precision general matrix multiplication {@literal C = alpha * op(A) * op(B) + beta * C}.
+     */
+    public void gemm(boolean transA, boolean transB, float alpha, FloatMatrix A, FloatMatrix B,
+                     float beta, FloatMatrix C);
+
+    /**
+     * Sparse-dense matrix multiplication {@literal C = A * B}, where A is in CSR format. C must not be B.
+     */
+    public void spmm(SparseMatrix A, DoubleMatrix B, DoubleMatrix C);
+
+    /**
+     * Sparse-dense matrix multiplication {@literal C = C + A^T * B}, where A is in CSR format.
+     * Only the rows of C at the columns of the non-zero values of A are touched.
+     */
+    public void spmmTransA(SparseMatrix A, DoubleMatrix B, DoubleMatrix C);
+
+    /**
+     * {@literal y = y + alpha * x}
+     */
+    public void axpy(double alpha, DoubleMatrix x, DoubleMatrix y);
+
+    /**
+     * {@literal M = alpha * M}
+     */
+    public void scale(double alpha, DoubleMatrix M);
+
+    /**
+     * {@literal out = A - B} (elementwise)
+     */
+    public void sub(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out);
+
+    /**
+     * {@literal out = A . B} (elementwise)
+     */
+    public void mul(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out);
+
+    /**
+     * @return {@literal sum_i A[i] * B[i]}
+     */
+    public double dot(DoubleMatrix A, DoubleMatrix B);
+
+    /**
+     * Row broadcast {@literal out[i,j] = M[i,j] + v[j]}
+     */
+    public void addRowVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out);
+
+    /**
+     * Column broadcast {@literal out[i,j] = M[i,j] - v[i]}
+     */
+    public void subColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out);
+
+    /**
+     * Column broadcast {@literal out[i,j] = M[i,j] / v[i]}
+     */
+    public void divColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out);
+
+    /**
+     * {@literal v[j] = v[j] + sum_i M[i,j]}
+     */
+    public void addColumnSums(DoubleMatrix M, DoubleMatrix v);
+
+    /**
+     * {@literal r[i] = sum_j M[i,j]}
+     */
+    public void rowSums(DoubleMatrix M, DoubleMatrix r);
+
+    /**
+     * {@literal r[i] = max_j M[i,j]}
+     */
+    public void rowMaxs(DoubleMatrix M, DoubleMatrix r);
+
+    /**
+     * {@literal r[i] = sum_j A[i,j] * B[i,j]}
+     */
+    public void rowDots(DoubleMatrix A, DoubleMatrix B, DoubleMatrix r);
+
+    /**
+     * {@literal r[i] = argmax_j M[i,j]}
+     */
+    public void rowArgmaxs(DoubleMatrix M, int[] r);
+
+    /**
+     * {@literal Y = exp(X)} (elementwise)
+     */
+    public void exp(DoubleMatrix X, DoubleMatrix Y);
+
+    /**
+     * {@literal Y[i,j] = max(0, X[i,j] + b[j])}
+     * @param b a bias vector, or null for no bias
+     */
+    public void relu(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y);
+
+    /**
+     * {@literal gX[i,j] = gY[i,j] if Y[i,j] > 0 else 0}, where Y is the output (or the input) of relu
+     */
+    public void reluBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX);
+
+    /**
+     * {@literal Y[i,j] = 1 / (1 + exp(-(X[i,j] + b[j])))}
+     * @param b a bias vector, or null for no bias
+     */
+    public void sigmoid(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y);
+
+    /**
+     * {@literal gX = gY . Y . (1 - Y)}, where Y is the output of sigmoid
+     */
+    public void sigmoidBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX);
+
+    /**
+     * {@literal Y[i,j] = tanh(X[i,j] + b[j])}
+     * @param b a bias vector, or null for no bias
+     */
+    public void tanh(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y);
+
+    /**
+     * {@literal gX = gY . (1 - Y . Y)}, where Y is the output of tanh
+     */
+    public void tanhBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX);
+}
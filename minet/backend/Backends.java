@@ -0,0 +1,64 @@
+// File: Backends.java
+// Backends class
+package minet.backend;
+
+/**
+ * Selection of the compute backend used by all layers, losses and optimizers.
+ * The default backend is {@link JblasBackend}; another one (e.g. the pure-Java {@link JavaBackend})
+ * can be chosen at runtime,
+ * either with {@link #set(Backend)} / {@link #set(String)}
+ * or with the system property {@code minet.backend} (e.g. {@code -Dminet.backend=jblas}).
+ *
+ * @author Phong Le
+ */
+public class Backends {
+
+    private static volatile Backend backend = create(System.getProperty("minet.backend", "jblas"));
+
+    /**
+     * Get the backend in use.
+     * @return the backend
+     */
+    public static Backend get() {
+        return backend;
+    }
+
+    /**
+     * Set the backend to use.
+     * @param b a backend
+     */
+    public static void set(Backend b) {
+        if (b == null)
+            throw new IllegalArgumentException("backend must not be null");
+        backend = b;
+    }
+
+    /**
+     * Set the backend to use, by name.
+     * @param name "jblas", "java", or the name of a class implementing {@link Backend}
+     */
+    public static void set(String name) {
+        set(create(name));
+    }
+
+    static Backend create(String name) {
+        if (name.equals("jblas"))
+            return new JblasBackend();
+        if (name.equals("java"))
+            return new JavaBackend();
+        try {
+            return (Backend) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("unknown backend " + name, e);
+        }
+    }
+
+    /**
+     * Check the shapes of a matrix multiplication [m x k] * [kB x n] = [cRows x cColumns].
+     */
+    static void checkGemm(int m, int k, int n, int kB, int cRows, int cColumns) {
+        if (k != kB || m != cRows || n != cColumns)
+            throw new IllegalArgumentException(String.format(
+                    "gemm: cannot multiply [%d x %d] by [%d x %d] into [%d x %d]", m, k, kB, n, cRows, cColumns));
+    }
+}
@@ -0,0 +1,398 @@
+// File: JavaBackend.java
+// JavaBackend class
+package minet.backend;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import minet.util.Parallel;
+import minet.util.SparseMatrix;
+
+/**
+ * A pure-Java multi-threaded backend, for hosts where the jblas native libraries cannot be loaded
+ * (jblas is then only used for its matrix classes).
+ * Matrix multiplications are computed by a cache-blocked, register-tiled kernel (see {@link JavaGemm})
+ * parallelised over tiles of the output; the other operations are split over columns, rows or elements.
+ * All the work runs on a fork-join pool; small operations run directly in the calling thread.
+ *
+ * Select it with {@code -Dminet.backend=java} or {@code Backends.set(new JavaBackend())}.
+ *
+ * @author Phong Le
+ */
+public class JavaBackend implements Backend {
+
+    ForkJoinPool pool;
+
+    /**
+     * Create a backend running on the common fork-join pool.
+     */
+    public JavaBackend() {
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Create a backend running on its own pool.
+     * @param nThreads the number of worker threads
+     */
+    public JavaBackend(int nThreads) {
+        this.pool = new ForkJoinPool(nThreads);
+    }
+
+    @Override
+    public void gemm(boolean transA, boolean transB, double alpha, DoubleMatrix A, DoubleMatrix B,
+                     double beta, DoubleMatrix C) {
+        int m = transA ? A.columns : A.rows;
+        int k = transA ? A.rows : A.columns;
+        int n = transB ? B.rows : B.columns;
+        Backends.checkGemm(m, k, n, transB ? B.columns : B.rows, C.rows, C.columns);
+        JavaGemm.dgemm(pool, transA, transB, m, n, k, alpha, A.data, A.rows, B.data, B.rows, beta, C.data, C.rows);
+    }
+
+    @Override
+    public void gemm(boolean transA, boolean transB, float alpha, FloatMatrix A, FloatMatrix B,
+                     float beta, FloatMatrix C) {
+        int m = transA ? A.columns : A.rows;
+        int k = transA ? A.rows : A.columns;
+        int n = transB ? B.rows : B.columns;
+        Backends.checkGemm(m, k, n, transB ? B.columns : B.rows, C.rows, C.columns);
+        JavaGemm.sgemm(pool, transA, transB, m, n, k, alpha, A.data, A.rows, B.data, B.rows, beta, C.data, C.rows);
+    }
+
+    @Override
+    public void spmm(final SparseMatrix A, final DoubleMatrix B, final DoubleMatrix C) {
+        Backends.checkGemm(A.rows, A.columns, B.columns, B.rows, C.rows, C.columns);
+        Parallel.parallelFor(pool, B.columns, Math.max(A.nnz, 1), new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                SparseKernels.spmm(A, B, C, start, end);
+            }
+        });
+    }
+
+    @Override
+    public void spmmTransA(final SparseMatrix A, final DoubleMatrix B, final DoubleMatrix C) {
+        Backends.checkGemm(A.columns, A.rows, B.columns, B.rows, C.rows, C.columns);
+        Parallel.parallelFor(pool, B.columns, Math.max(A.nnz, 1), new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                SparseKernels.spmmTransA(A, B, C, start, end);
+            }
+        });
+    }
+
+    @Override
+    public void axpy(final double alpha, DoubleMatrix x, DoubleMatrix y) {
+        final double[] a = x.data, b = y.data;
+        Parallel.parallelFor(pool, x.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    b[k] += alpha * a[k];
+                }
+            }
+        });
+    }
+
+    @Override
+    public void scale(final double alpha, DoubleMatrix M) {
+        final double[] m = M.data;
+        Parallel.parallelFor(pool, M.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    m[k] *= alpha;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void sub(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out) {
+        final double[] a = A.data, b = B.data, o = out.data;
+        Parallel.parallelFor(pool, A.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    o[k] = a[k] - b[k];
+                }
+            }
+        });
+    }
+
+    @Override
+    public void mul(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out) {
+        final double[] a = A.data, b = B.data, o = out.data;
+        Parallel.parallelFor(pool, A.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    o[k] = a[k] * b[k];
+                }
+            }
+        });
+    }
+
+    @Override
+    public double dot(DoubleMatrix A, DoubleMatrix B) {
+        double[] a = A.data, b = B.data;
+        double sum = 0;
+        for (int k = 0; k < A.length; k++) {
+            sum += a[k] * b[k];
+        }
+        return sum;
+    }
+
+    @Override
+    public void addRowVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        final double[] m = M.data, x = v.data, o = out.data;
+        final int rows = M.rows;
+        Parallel.parallelFor(pool, M.columns, rows, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    for (int k = j * rows; k < (j + 1) * rows; k++) {
+                        o[k] = m[k] + x[j];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void subColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        final double[] m = M.data, x = v.data, o = out.data;
+        final int rows = M.rows, columns = M.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = 0; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        o[k] = m[k] - x[i];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void divColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        final double[] m = M.data, x = v.data, o = out.data;
+        final int rows = M.rows, columns = M.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = 0; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        o[k] = m[k] / x[i];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void addColumnSums(DoubleMatrix M, DoubleMatrix v) {
+        final double[] m = M.data, x = v.data;
+        final int rows = M.rows;
+        Parallel.parallelFor(pool, M.columns, rows, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    double sum = 0;
+                    for (int k = j * rows; k < (j + 1) * rows; k++) {
+                        sum += m[k];
+                    }
+                    x[j] += sum;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void rowSums(DoubleMatrix M, DoubleMatrix r) {
+        final double[] m = M.data, s = r.data;
+        final int rows = M.rows, columns = M.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    s[i] = 0;
+                }
+                // column-major: sweep column by column, keeping one value per row
+                for (int j = 0; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        s[i] += m[k];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void rowMaxs(DoubleMatrix M, DoubleMatrix r) {
+        final double[] m = M.data, s = r.data;
+        final int rows = M.rows, columns = M.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                System.arraycopy(m, start, s, start, end - start);
+                for (int j = 1; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        if (m[k] > s[i])
+                            s[i] = m[k];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void rowDots(DoubleMatrix A, DoubleMatrix B, DoubleMatrix r) {
+        final double[] a = A.data, b = B.data, s = r.data;
+        final int rows = A.rows, columns = A.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    s[i] = 0;
+                }
+                for (int j = 0; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        s[i] += a[k] * b[k];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void rowArgmaxs(DoubleMatrix M, final int[] r) {
+        final double[] m = M.data;
+        final int rows = M.rows, columns = M.columns;
+        Parallel.parallelFor(pool, rows, columns, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    r[i] = 0;
+                }
+                for (int j = 1; j < columns; j++) {
+                    for (int i = start, k = j * rows + start; i < end; i++, k++) {
+                        if (m[k] > m[i + r[i] * rows])
+                            r[i] = j;
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void exp(DoubleMatrix X, DoubleMatrix Y) {
+        final double[] x = X.data, y = Y.data;
+        Parallel.parallelFor(pool, X.length, 8, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    y[k] = Math.exp(x[k]);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void relu(DoubleMatrix X, final DoubleMatrix b, DoubleMatrix Y) {
+        final double[] x = X.data, y = Y.data;
+        final int rows = X.rows;
+        Parallel.parallelFor(pool, X.columns, rows, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    double bj = b == null ? 0 : b.data[j];
+                    for (int k = j * rows; k < (j + 1) * rows; k++) {
+                        double z = x[k] + bj;
+                        y[k] = z > 0 ? z : 0;
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void reluBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        final double[] y = Y.data, g = gY.data, gx = gX.data;
+        Parallel.parallelFor(pool, gY.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    gx[k] = y[k] > 0 ? g[k] : 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void sigmoid(DoubleMatrix X, final DoubleMatrix b, DoubleMatrix Y) {
+        final double[] x = X.data, y = Y.data;
+        final int rows = X.rows;
+        Parallel.parallelFor(pool, X.columns, 8L * rows, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    double bj = b == null ? 0 : b.data[j];
+                    for (int k = j * rows; k < (j + 1) * rows; k++) {
+                        y[k] = 1 / (1 + Math.exp(-(x[k] + bj)));
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void sigmoidBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        final double[] y = Y.data, g = gY.data, gx = gX.data;
+        Parallel.parallelFor(pool, gY.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    gx[k] = g[k] * y[k] * (1 - y[k]);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void tanh(DoubleMatrix X, final DoubleMatrix b, DoubleMatrix Y) {
+        final double[] x = X.data, y = Y.data;
+        final int rows = X.rows;
+        Parallel.parallelFor(pool, X.columns, 8L * rows, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    double bj = b == null ? 0 : b.data[j];
+                    for (int k = j * rows; k < (j + 1) * rows; k++) {
+                        y[k] = Math.tanh(x[k] + bj);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void tanhBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        final double[] y = Y.data, g = gY.data, gx = gX.data;
+        Parallel.parallelFor(pool, gY.length, 1, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int k = start; k < end; k++) {
+                    gx[k] = g[k] * (1 - y[k] * y[k]);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "java";
+    }
+}
@@ -0,0 +1,236 @@
+// File: JavaGemm.java
+// JavaGemm class
+package minet.backend;
+
+import java.util.concurrent.ForkJoinPool;
+
+import minet.util.Parallel;
+
+/**
+ * Pure-Java general matrix multiplication {@literal C = alpha * op(A) * op(B) + beta * C}
+ * on column-major arrays, used by {@link JavaBackend}.
+ *
+ * C is cut into [MB x NB] tiles which are computed in parallel. For each tile, op(A) and op(B)
+ * are processed in blocks of KC along the inner dimension: the blocks are first packed
+ * into contiguous micro-panels of MR rows (for op(A)) and NR columns (for op(B)), reading A and B
+ * with strides so that transposed operands are never built. Then a register-tiled micro-kernel
+ * accumulates each [MR x NR] sub-tile of C in local variables.
+ *
+ * @author Phong Le
+ */
+class JavaGemm {
+
+    static final int MR = 4, NR = 4;     // micro-kernel (register tile) size
+    static final int MB = 64, NB = 64;   // tile size, i.e. the unit of parallel work
+    static final int KC = 256;           // block size along the inner dimension
+
+    // packing buffers and micro-kernel accumulators, one set per thread
+    static final ThreadLocal<double[][]> dBuffers = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[][] { new double[MB * KC], new double[KC * NB], new double[MR * NR] };
+        }
+    };
+    static final ThreadLocal<float[][]> sBuffers = new ThreadLocal<float[][]>() {
+        @Override
+        protected float[][] initialValue() {
+            return new float[][] { new float[MB * KC], new float[KC * NB], new float[MR * NR] };
+        }
+    };
+
+    /**
+     * Double-precision gemm. op(A) is [m x k], op(B) is [k x n], C is [m x n];
+     * lda, ldb, ldc are the numbers of rows of A, B, C.
+     */
+    static void dgemm(ForkJoinPool pool, boolean transA, boolean transB, final int m, final int n, final int k,
+                      final double alpha, final double[] a, int lda, final double[] b, int ldb,
+                      final double beta, final double[] c, final int ldc) {
+        // op(A)[i,p] = a[i * ars + p * acs], op(B)[p,j] = b[p * brs + j * bcs]
+        final int ars = transA ? lda : 1, acs = transA ? 1 : lda;
+        final int brs = transB ? ldb : 1, bcs = transB ? 1 : ldb;
+        final int tilesM = (m + MB - 1) / MB, tilesN = (n + NB - 1) / NB;
+
+        Parallel.parallelFor(pool, tilesM * tilesN, (long) MB * NB * Math.max(k, 1), new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int t = start; t < end; t++) {
+                    int i0 = (t % tilesM) * MB, j0 = (t / tilesM) * NB;
+                    dgemmTile(i0, Math.min(i0 + MB, m), j0, Math.min(j0 + NB, n), k,
+                            alpha, a, ars, acs, b, brs, bcs, beta, c, ldc);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compute the tile C[i0:i1, j0:j1].
+     */
+    static void dgemmTile(int i0, int i1, int j0, int j1, int k,
+                          double alpha, double[] a, int ars, int acs, double[] b, int brs, int bcs,
+                          double beta, double[] c, int ldc) {
+        for (int j = j0; j < j1; j++) {
+            for (int i = i0 + j * ldc; i < i1 + j * ldc; i++) {
+                c[i] = beta == 0 ? 0 : beta * c[i];
+            }
+        }
+        if (alpha == 0)
+            return;
+
+        double[][] buffers = dBuffers.get();
+        double[] ap = buffers[0], bp = buffers[1], acc = buffers[2];
+        int mb = i1 - i0, nb = j1 - j0;
+
+        for (int p0 = 0; p0 < k; p0 += KC) {
+            int kc = Math.min(KC, k - p0);
+
+            // pack op(A)[i0:i1, p0:p0+kc] into micro-panels of MR rows, padded with zeros
+            int off = 0;
+            for (int ir = i0; ir < i1; ir += MR) {
+                for (int p = p0; p < p0 + kc; p++) {
+                    for (int i = ir; i < ir + MR; i++) {
+                        ap[off++] = i < i1 ? a[i * ars + p * acs] : 0;
+                    }
+                }
+            }
+            // pack op(B)[p0:p0+kc, j0:j1] into micro-panels of NR columns, padded with zeros
+            off = 0;
+            for (int jr = j0; jr < j1; jr += NR) {
+                for (int p = p0; p < p0 + kc; p++) {
+                    for (int j = jr; j < jr + NR; j++) {
+                        bp[off++] = j < j1 ? b[p * brs + j * bcs] : 0;
+                    }
+                }
+            }
+
+            for (int jr = 0; jr < nb; jr += NR) {
+                for (int ir = 0; ir < mb; ir += MR) {
+                    dkernel(kc, ap, ir * kc, bp, jr * kc, acc);
+
+                    // C[i,j] += alpha * acc, skipping the padding
+                    int mr = Math.min(MR, mb - ir), nr = Math.min(NR, nb - jr);
+                    for (int jj = 0; jj < nr; jj++) {
+                        int ci = (i0 + ir) + (j0 + jr + jj) * ldc;
+                        for (int ii = 0; ii < mr; ii++) {
+                            c[ci + ii] += alpha * acc[ii + jj * MR];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The micro-kernel: acc = Ap * Bp, where Ap is a [MR x kc] micro-panel stored column by column
+     * and Bp is a [kc x NR] micro-panel stored row by row.
+     */
+    static void dkernel(int kc, double[] ap, int ao, double[] bp, int bo, double[] acc) {
+        double c00 = 0, c10 = 0, c20 = 0, c30 = 0;
+        double c01 = 0, c11 = 0, c21 = 0, c31 = 0;
+        double c02 = 0, c12 = 0, c22 = 0, c32 = 0;
+        double c03 = 0, c13 = 0, c23 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++, ao += MR, bo += NR) {
+            double a0 = ap[ao], a1 = ap[ao + 1], a2 = ap[ao + 2], a3 = ap[ao + 3];
+            double b0 = bp[bo], b1 = bp[bo + 1], b2 = bp[bo + 2], b3 = bp[bo + 3];
+            c00 += a0 * b0; c10 += a1 * b0; c20 += a2 * b0; c30 += a3 * b0;
+            c01 += a0 * b1; c11 += a1 * b1; c21 += a2 * b1; c31 += a3 * b1;
+            c02 += a0 * b2; c12 += a1 * b2; c22 += a2 * b2; c32 += a3 * b2;
+            c03 += a0 * b3; c13 += a1 * b3; c23 += a2 * b3; c33 += a3 * b3;
+        }
+        acc[0] = c00;  acc[1] = c10;  acc[2] = c20;  acc[3] = c30;
+        acc[4] = c01;  acc[5] = c11;  acc[6] = c21;  acc[7] = c31;
+        acc[8] = c02;  acc[9] = c12;  acc[10] = c22; acc[11] = c32;
+        acc[12] = c03; acc[13] = c13; acc[14] = c23; acc[15] = c33;
+    }
+
+    /**
+     * Single-precision gemm, same as {@link #dgemm}.
+     */
+    static void sgemm(ForkJoinPool pool, boolean transA, boolean transB, final int m, final int n, final int k,
+                      final float alpha, final float[] a, int lda, final float[] b, int ldb,
+                      final float beta, final float[] c, final int ldc) {
+        final int ars = transA ? lda : 1, acs = transA ? 1 : lda;
+        final int brs = transB ? ldb : 1, bcs = transB ? 1 : ldb;
+        final int tilesM = (m + MB - 1) / MB, tilesN = (n + NB - 1) / NB;
+
+        Parallel.parallelFor(pool, tilesM * tilesN, (long) MB * NB * Math.max(k, 1), new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                for (int t = start; t < end; t++) {
+                    int i0 = (t % tilesM) * MB, j0 = (t / tilesM) * NB;
+                    sgemmTile(i0, Math.min(i0 + MB, m), j0, Math.min(j0 + NB, n), k,
+                            alpha, a, ars, acs, b, brs, bcs, beta, c, ldc);
+                }
+            }
+        });
+    }
+
+    static void sgemmTile(int i0, int i1, int j0, int j1, int k,
+                          float alpha, float[] a, int ars, int acs, float[] b, int brs, int bcs,
+                          float beta, float[] c, int ldc) {
+        for (int j = j0; j < j1; j++) {
+            for (int i = i0 + j * ldc; i < i1 + j * ldc; i++) {
+                c[i] = beta == 0 ? 0 : beta * c[i];
+            }
+        }
+        if (alpha == 0)
+            return;
+
+        float[][] buffers = sBuffers.get();
+        float[] ap = buffers[0], bp = buffers[1], acc = buffers[2];
+        int mb = i1 - i0, nb = j1 - j0;
+
+        for (int p0 = 0; p0 < k; p0 += KC) {
+            int kc = Math.min(KC, k - p0);
+
+            int off = 0;
+            for (int ir = i0; ir < i1; ir += MR) {
+                for (int p = p0; p < p0 + kc; p++) {
+                    for (int i = ir; i < ir + MR; i++) {
+                        ap[off++] = i < i1 ? a[i * ars + p * acs] : 0;
+                    }
+                }
+            }
+            off = 0;
+            for (int jr = j0; jr < j1; jr += NR) {
+                for (int p = p0; p < p0 + kc; p++) {
+                    for (int j = jr; j < jr + NR; j++) {
+                        bp[off++] = j < j1 ? b[p * brs + j * bcs] : 0;
+                    }
+                }
+            }
+
+            for (int jr = 0; jr < nb; jr += NR) {
+                for (int ir = 0; ir < mb; ir += MR) {
+                    skernel(kc, ap, ir * kc, bp, jr * kc, acc);
+
+                    int mr = Math.min(MR, mb - ir), nr = Math.min(NR, nb - jr);
+                    for (int jj = 0; jj < nr; jj++) {
+                        int ci = (i0 + ir) + (j0 + jr + jj) * ldc;
+                        for (int ii = 0; ii < mr; ii++) {
+                            c[ci + ii] += alpha * acc[ii + jj * MR];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static void skernel(int kc, float[] ap, int ao, float[] bp, int bo, float[] acc) {
+        float c00 = 0, c10 = 0, c20 = 0, c30 = 0;
+        float c01 = 0, c11 = 0, c21 = 0, c31 = 0;
+        float c02 = 0, c12 = 0, c22 = 0, c32 = 0;
+        float c03 = 0, c13 = 0, c23 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++, ao += MR, bo += NR) {
+            float a0 = ap[ao], a1 = ap[ao + 1], a2 = ap[ao + 2], a3 = ap[ao + 3];
+            float b0 = bp[bo], b1 = bp[bo + 1], b2 = bp[bo + 2], b3 = bp[bo + 3];
+            c00 += a0 * b0; c10 += a1 * b0; c20 += a2 * b0; c30 += a3 * b0;
+            c01 += a0 * b1; c11 += a1 * b1; c21 += a2 * b1; c31 += a3 * b1;
+            c02 += a0 * b2; c12 += a1 * b2; c22 += a2 * b2; c32 += a3 * b2;
+            c03 += a0 * b3; c13 += a1 * b3; c23 += a2 * b3; c33 += a3 * b3;
+        }
+        acc[0] = c00;  acc[1] = c10;  acc[2] = c20;  acc[3] = c30;
+        acc[4] = c01;  acc[5] = c11;  acc[6] = c21;  acc[7] = c31;
+        acc[8] = c02;  acc[9] = c12;  acc[10] = c22; acc[11] = c32;
+        acc[12] = c03; acc[13] = c13; acc[14] = c23; acc[15] = c33;
+    }
+}
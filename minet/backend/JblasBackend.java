@@ -0,0 +1,252 @@
+// File: JblasBackend.java
+// JblasBackend class
+package minet.backend;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.jblas.MatrixFunctions;
+import org.jblas.NativeBlas;
+import org.jblas.SimpleBlas;
+
+import minet.util.SparseMatrix;
+
+/**
+ * The default backend: matrix multiplications and BLAS level-1 operations are computed
+ * by the native BLAS library shipped with jblas, the other operations by in-place jblas operations
+ * or plain loops over the (column-major) data.
+ *
+ * @author Phong Le
+ */
+public class JblasBackend implements Backend {
+
+    public JblasBackend() { }
+
+    @Override
+    public void gemm(boolean transA, boolean transB, double alpha, DoubleMatrix A, DoubleMatrix B,
+                     double beta, DoubleMatrix C) {
+        int m = transA ? A.columns : A.rows;
+        int k = transA ? A.rows : A.columns;
+        int n = transB ? B.rows : B.columns;
+        Backends.checkGemm(m, k, n, transB ? B.columns : B.rows, C.rows, C.columns);
+        if (m == 0 || n == 0)
+            return;
+        NativeBlas.dgemm(transA ? 'T' : 'N', transB ? 'T' : 'N', m, n, k,
+                alpha, A.data, 0, Math.max(A.rows, 1), B.data, 0, Math.max(B.rows, 1),
+                beta, C.data, 0, Math.max(C.rows, 1));
+    }
+
+    @Override
+    public void gemm(boolean transA, boolean transB, float alpha, FloatMatrix A, FloatMatrix B,
+                     float beta, FloatMatrix C) {
+        int m = transA ? A.columns : A.rows;
+        int k = transA ? A.rows : A.columns;
+        int n = transB ? B.rows : B.columns;
+        Backends.checkGemm(m, k, n, transB ? B.columns : B.rows, C.rows, C.columns);
+        if (m == 0 || n == 0)
+            return;
+        NativeBlas.sgemm(transA ? 'T' : 'N', transB ? 'T' : 'N', m, n, k,
+                alpha, A.data, 0, Math.max(A.rows, 1), B.data, 0, Math.max(B.rows, 1),
+                beta, C.data, 0, Math.max(C.rows, 1));
+    }
+
+    @Override
+    public void spmm(SparseMatrix A, DoubleMatrix B, DoubleMatrix C) {
+        Backends.checkGemm(A.rows, A.columns, B.columns, B.rows, C.rows, C.columns);
+        SparseKernels.spmm(A, B, C, 0, B.columns);
+    }
+
+    @Override
+    public void spmmTransA(SparseMatrix A, DoubleMatrix B, DoubleMatrix C) {
+        Backends.checkGemm(A.columns, A.rows, B.columns, B.rows, C.rows, C.columns);
+        SparseKernels.spmmTransA(A, B, C, 0, B.columns);
+    }
+
+    @Override
+    public void axpy(double alpha, DoubleMatrix x, DoubleMatrix y) {
+        SimpleBlas.axpy(alpha, x, y);
+    }
+
+    @Override
+    public void scale(double alpha, DoubleMatrix M) {
+        SimpleBlas.scal(alpha, M);
+    }
+
+    @Override
+    public void sub(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out) {
+        A.subi(B, out);
+    }
+
+    @Override
+    public void mul(DoubleMatrix A, DoubleMatrix B, DoubleMatrix out) {
+        A.muli(B, out);
+    }
+
+    @Override
+    public double dot(DoubleMatrix A, DoubleMatrix B) {
+        return SimpleBlas.dot(A, B);
+    }
+
+    @Override
+    public void addRowVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        if (out != M)
+            out.copy(M);
+        out.addiRowVector(v);
+    }
+
+    @Override
+    public void subColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        if (out != M)
+            out.copy(M);
+        out.subiColumnVector(v);
+    }
+
+    @Override
+    public void divColumnVector(DoubleMatrix M, DoubleMatrix v, DoubleMatrix out) {
+        if (out != M)
+            out.copy(M);
+        out.diviColumnVector(v);
+    }
+
+    @Override
+    public void addColumnSums(DoubleMatrix M, DoubleMatrix v) {
+        double[] m = M.data;
+        int rows = M.rows;
+        for (int j = 0; j < M.columns; j++) {
+            double sum = 0;
+            for (int k = j * rows; k < (j + 1) * rows; k++) {
+                sum += m[k];
+            }
+            v.data[j] += sum;
+        }
+    }
+
+    @Override
+    public void rowSums(DoubleMatrix M, DoubleMatrix r) {
+        double[] m = M.data, s = r.data;
+        int rows = M.rows;
+        for (int i = 0; i < rows; i++) {
+            s[i] = 0;
+        }
+        // column-major: sweep column by column, keeping one value per row
+        for (int j = 0; j < M.columns; j++) {
+            for (int i = 0, k = j * rows; i < rows; i++, k++) {
+                s[i] += m[k];
+            }
+        }
+    }
+
+    @Override
+    public void rowMaxs(DoubleMatrix M, DoubleMatrix r) {
+        double[] m = M.data, s = r.data;
+        int rows = M.rows;
+        System.arraycopy(m, 0, s, 0, rows);
+        for (int j = 1; j < M.columns; j++) {
+            for (int i = 0, k = j * rows; i < rows; i++, k++) {
+                if (m[k] > s[i])
+                    s[i] = m[k];
+            }
+        }
+    }
+
+    @Override
+    public void rowDots(DoubleMatrix A, DoubleMatrix B, DoubleMatrix r) {
+        double[] a = A.data, b = B.data, s = r.data;
+        int rows = A.rows;
+        for (int i = 0; i < rows; i++) {
+            s[i] = 0;
+        }
+        for (int j = 0; j < A.columns; j++) {
+            for (int i = 0, k = j * rows; i < rows; i++, k++) {
+                s[i] += a[k] * b[k];
+            }
+        }
+    }
+
+    @Override
+    public void rowArgmaxs(DoubleMatrix M, int[] r) {
+        double[] m = M.data;
+        int rows = M.rows;
+        for (int i = 0; i < rows; i++) {
+            r[i] = 0;
+        }
+        for (int j = 1; j < M.columns; j++) {
+            for (int i = 0, k = j * rows; i < rows; i++, k++) {
+                if (m[k] > m[i + r[i] * rows])
+                    r[i] = j;
+            }
+        }
+    }
+
+    @Override
+    public void exp(DoubleMatrix X, DoubleMatrix Y) {
+        if (Y != X)
+            Y.copy(X);
+        MatrixFunctions.expi(Y);
+    }
+
+    @Override
+    public void relu(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y) {
+        double[] x = X.data, y = Y.data;
+        int rows = X.rows;
+        for (int j = 0; j < X.columns; j++) {
+            double bj = b == null ? 0 : b.data[j];
+            for (int k = j * rows; k < (j + 1) * rows; k++) {
+                double z = x[k] + bj;
+                y[k] = z > 0 ? z : 0;
+            }
+        }
+    }
+
+    @Override
+    public void reluBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        double[] y = Y.data, g = gY.data, gx = gX.data;
+        for (int k = 0; k < gY.length; k++) {
+            gx[k] = y[k] > 0 ? g[k] : 0;
+        }
+    }
+
+    @Override
+    public void sigmoid(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y) {
+        double[] x = X.data, y = Y.data;
+        int rows = X.rows;
+        for (int j = 0; j < X.columns; j++) {
+            double bj = b == null ? 0 : b.data[j];
+            for (int k = j * rows; k < (j + 1) * rows; k++) {
+                y[k] = 1 / (1 + Math.exp(-(x[k] + bj)));
+            }
+        }
+    }
+
+    @Override
+    public void sigmoidBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        double[] y = Y.data, g = gY.data, gx = gX.data;
+        for (int k = 0; k < gY.length; k++) {
+            gx[k] = g[k] * y[k] * (1 - y[k]);
+        }
+    }
+
+    @Override
+    public void tanh(DoubleMatrix X, DoubleMatrix b, DoubleMatrix Y) {
+        double[] x = X.data, y = Y.data;
+        int rows = X.rows;
+        for (int j = 0; j < X.columns; j++) {
+            double bj = b == null ? 0 : b.data[j];
+            for (int k = j * rows; k < (j + 1) * rows; k++) {
+                y[k] = Math.tanh(x[k] + bj);
+            }
+        }
+    }
+
+    @Override
+    public void tanhBackward(DoubleMatrix Y, DoubleMatrix gY, DoubleMatrix gX) {
+        double[] y = Y.data, g = gY.data, gx = gX.data;
+        for (int k = 0; k < gY.length; k++) {
+            gx[k] = g[k] * (1 - y[k] * y[k]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "jblas";
+    }
+}
@@ -0,0 +1,55 @@
+// File: SparseKernels.java
+// SparseKernels class
+package minet.backend;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.SparseMatrix;
+
+/**
+ * Sparse-dense matrix multiplications shared by the backends, computed over a range of columns
+ * of the dense operands so that they can be split over threads.
+ * B and C are column-major, so each column of B (and C) is a contiguous block
+ * which stays in cache while all the non-zero values of A are swept.
+ *
+ * @author Phong Le
+ */
+class SparseKernels {
+
+    /**
+     * C[:, j0:j1] = A * B[:, j0:j1]
+     */
+    static void spmm(SparseMatrix A, DoubleMatrix B, DoubleMatrix C, int j0, int j1) {
+        int[] rowPtr = A.rowPtr, colIdx = A.colIdx;
+        double[] v = A.values, b = B.data, c = C.data;
+        for (int j = j0; j < j1; j++) {
+            int bj = j * B.rows, cj = j * C.rows;
+            for (int i = 0; i < A.rows; i++) {
+                double sum = 0;
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    sum += v[k] * b[colIdx[k] + bj];
+                }
+                c[i + cj] = sum;
+            }
+        }
+    }
+
+    /**
+     * C[:, j0:j1] += A^T * B[:, j0:j1], touching only the rows of C at the columns of A's non-zero values.
+     */
+    static void spmmTransA(SparseMatrix A, DoubleMatrix B, DoubleMatrix C, int j0, int j1) {
+        int[] rowPtr = A.rowPtr, colIdx = A.colIdx;
+        double[] v = A.values, b = B.data, c = C.data;
+        for (int j = j0; j < j1; j++) {
+            int bj = j * B.rows, cj = j * C.rows;
+            for (int i = 0; i < A.rows; i++) {
+                double g = b[i + bj];
+                if (g == 0)
+                    continue;
+                for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                    c[colIdx[k] + cj] += v[k] * g;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// File: ArrayDataset.java
+// ArrayDataset class
+package minet.data;
+
+import java.util.Random;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.SparseMatrix;
+
+/**
+ * Abstract class for datasets stored in primitive arrays:
+ * the input features of all samples in one row-major array, and the labels in an int array.
+ * Each child class has to implement {@link #fromFile(String)}, which fills these arrays.
+ * @author Phong Le
+ */
+public abstract class ArrayDataset extends MatrixDataset {
+
+    private static final long serialVersionUID = -279771911713347562L;
+
+    protected double[] features; // input features, sample after sample (i.e. a row-major [size x inputDims] matrix)
+    protected int[] labels; // labels of the samples
+    protected int inputDims; // number of input features
+
+    /**
+     * Constructor for ArrayDataset
+     * @param batchsize (int) size of each mini-batch
+     * @param shuffle (boolean) if true, shuffle the dataset at the beginning of each epoch
+     * @param rnd (java.util.Random) random generator for the shuffling
+     */
+    public ArrayDataset(int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+    }
+
+    @Override
+    public int getSize() {
+        return labels.length;
+    }
+
+    @Override
+    public int getInputDims() {
+        return inputDims;
+    }
+
+    @Override
+    protected void copyInput(int index, DoubleMatrix X, int row) {
+        // X is column-major: X[row, j] is at row + j * X.rows
+        double[] x = X.data;
+        int rows = X.rows;
+        int offset = index * inputDims;
+        for (int j = 0; j < inputDims; j++) {
+            x[row + j * rows] = features[offset + j];
+        }
+    }
+
+    @Override
+    protected void copyInputSparse(int index, SparseMatrix X) {
+        int offset = index * inputDims;
+        for (int j = 0; j < inputDims; j++) {
+            if (features[offset + j] != 0)
+                X.add(j, features[offset + j]);
+        }
+        X.endRow();
+    }
+
+    @Override
+    protected int getLabel(int index) {
+        return labels[index];
+    }
+}
@@ -17,6 +17,8 @@ import minet.util.Pair;
  */
 public abstract class Dataset<Tin, Tout> implements java.io.Serializable{
 
+    private static final long serialVersionUID = -8229283523061129039L;
+
     protected ArrayList<Pair<Tin, Tout>> items; // list of samples in this dataset. Each item is a sample, which consists of the sample's input and its output label(s). 
     protected boolean shuffle; // if true, shuffle the dataset once a pass (i.e., an epoch) over the data is finished.
     protected int currIndex;  // index of the starting sample of the current batch.
@@ -0,0 +1,102 @@
+// File: IdxFile.java
+// IdxFile class
+package minet.data;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A reader of IDX files (the format of the original MNIST files, e.g. train-images-idx3-ubyte),
+ * plain or gzipped (*.gz), with unsigned byte data. The data is read in bulk through a channel
+ * straight into a byte array.
+ * <pre>
+ * header: [0 (byte)] [0 (byte)] [data type (byte), 0x08 for unsigned bytes] [number of dimensions d (byte)]
+ *         [size of each dimension (d big-endian ints)]
+ * data:   the values, in row-major order
+ * </pre>
+ * @author Phong Le
+ */
+public class IdxFile {
+
+    static final int UBYTE = 0x08;
+
+    public int[] dims;   // size of each dimension
+    public byte[] data;  // the values, row-major
+
+    /**
+     * Read an IDX file.
+     * @param path path to the file, gzipped if it ends with .gz
+     * @return the content of the file
+     */
+    public static IdxFile read(String path) throws IOException {
+        ReadableByteChannel channel;
+        if (path.endsWith(".gz"))
+            channel = Channels.newChannel(new GZIPInputStream(new FileInputStream(path), 1 << 16));
+        else
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+            readFully(channel, header, path);
+            if (header.get(0) != 0 || header.get(1) != 0)
+                throw new IOException(path + " is not an IDX file");
+            int type = header.get(2) & 0xFF;
+            if (type != UBYTE)
+                throw new IOException(String.format("unsupported IDX data type 0x%02x in %s", type, path));
+
+            IdxFile idx = new IdxFile();
+            idx.dims = new int[header.get(3) & 0xFF];
+            if (idx.dims.length == 0)
+                throw new IOException(path + " has no dimension");
+            ByteBuffer dimBuf = ByteBuffer.allocate(4 * idx.dims.length).order(ByteOrder.BIG_ENDIAN);
+            readFully(channel, dimBuf, path);
+            for (int d = 0; d < idx.dims.length; d++) {
+                idx.dims[d] = dimBuf.getInt(4 * d);
+                if (idx.dims[d] < 0)
+                    throw new IOException(String.format("%s: negative size %d of dimension %d", path, idx.dims[d], d));
+            }
+            // the sizes are non-negative, so the product only grows (unless it becomes 0)
+            long length = 1;
+            for (int d = 0; d < idx.dims.length && length > 0; d++) {
+                length *= idx.dims[d];
+                if (length > Integer.MAX_VALUE - 8)
+                    throw new IOException(path + " is too large");
+            }
+
+            idx.data = new byte[(int)length];
+            readFully(channel, ByteBuffer.wrap(idx.data), path);
+            return idx;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Fill a buffer from a channel.
+     */
+    static void readFully(ReadableByteChannel channel, ByteBuffer buf, String path) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0)
+                throw new IOException(path + " is truncated");
+        }
+    }
+
+    /**
+     * @return the number of values per item (the product of the sizes of all the dimensions but the first)
+     */
+    public int getItemSize() {
+        int n = 1;
+        for (int d = 1; d < dims.length; d++) {
+            n *= dims[d];
+        }
+        return n;
+    }
+}
@@ -0,0 +1,269 @@
+// File: MatrixDataset.java
+// MatrixDataset class
+package minet.data;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Abstract class for datasets whose samples are feature vectors with integer labels (e.g. classification).
+ * Unlike {@link Dataset}, mini-batches are returned directly as two matrices:
+ * X (#rows = #samples, #cols = #input features) and Y (#rows = #samples, #cols = 1, the labels).
+ * These matrices are allocated once and filled again for every mini-batch, and the dataset is shuffled
+ * by permuting an array of sample indices rather than the samples themselves.
+ * Each child class decides how samples are stored (see e.g. {@link ArrayDataset}).
+ * @author Phong Le
+ */
+public abstract class MatrixDataset implements java.io.Serializable {
+
+    private static final long serialVersionUID = -1626186204037628099L;
+
+    protected boolean shuffle; // if true, shuffle the dataset once a pass (i.e., an epoch) over the data is finished.
+    protected int currIndex;  // index (in order) of the starting sample of the current batch.
+    protected int batchsize; // batch size
+    protected Random rnd; // random generator
+    protected int[] order; // sample indices, in the order they are visited in the current epoch
+
+    // mini-batch buffers, reused from batch to batch (the last batch of an epoch can be smaller)
+    protected transient Pair<DoubleMatrix, DoubleMatrix> batch;
+    protected transient Pair<DoubleMatrix, DoubleMatrix> lastBatch;
+    protected transient Pair<SparseMatrix, DoubleMatrix> sparseBatch;
+
+    /**
+     * Constructor for MatrixDataset
+     * @param batchsize (int) size of each mini-batch
+     * @param shuffle (boolean) if true, shuffle the dataset at the beginning of each epoch
+     * @param rnd (java.util.Random) random generator for the shuffling
+     */
+    public MatrixDataset(int batchsize, boolean shuffle, Random rnd) {
+        this.batchsize = batchsize;
+        this.currIndex = 0;
+        this.shuffle = shuffle;
+        this.rnd = rnd;
+    }
+
+    /**
+     * Load samples from file
+     * @param path Path to file to load
+     */
+    abstract public void fromFile(String path) throws IOException;
+
+    /**
+     * Get the number of samples in the dataset.
+     * @return the number of samples
+     */
+    abstract public int getSize();
+
+    /**
+     * Get the number of input features.
+     * @return the number of input features
+     */
+    abstract public int getInputDims();
+
+    /**
+     * Copy the input features of a sample into a row of a mini-batch matrix.
+     * @param index index of the sample
+     * @param X a [minibatch_size x input_dims] matrix
+     * @param row the row of X to be filled
+     */
+    abstract protected void copyInput(int index, DoubleMatrix X, int row);
+
+    /**
+     * Append the input features of a sample as a new row of a sparse mini-batch matrix.
+     * This default implementation goes through a dense row; child classes should override it
+     * to read the non-zero features directly.
+     * @param index index of the sample
+     * @param X a sparse matrix with #columns = input_dims
+     */
+    protected void copyInputSparse(int index, SparseMatrix X) {
+        DoubleMatrix row = new DoubleMatrix(1, getInputDims());
+        copyInput(index, row, 0);
+        X.addRow(row, 0);
+    }
+
+    /**
+     * Get the label of a sample.
+     * @param index index of the sample
+     * @return the label
+     */
+    abstract protected int getLabel(int index);
+
+    /**
+     * Get the size of each mini-batch.
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchsize;
+    }
+
+    /**
+     * @return true if the samples can be accessed in any order, i.e. if {@link #getMiniBatch(int, int, Pair)}
+     * and {@link #getSparseMiniBatch(int, int, Pair)} are supported (they are not by a {@link StreamingDataset})
+     */
+    public boolean isRandomAccess() {
+        return true;
+    }
+
+    /**
+     * Must be called before using this dataset
+     */
+    public void reset() {
+        this.currIndex = 0;
+        if (order == null || order.length != getSize()) {
+            order = new int[getSize()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
+        if (this.shuffle) {
+            // Fisher-Yates shuffle of the sample indices
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Get a minibatch of size batchsize. The returned matrices are reused by the next call,
+     * so they must not be kept across calls.
+     * @return a pair of X (feature values) and Y (labels), or null if the epoch is finished
+     */
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch() {
+        if (order == null)
+            this.reset();
+        boolean full = order.length - currIndex >= batchsize;
+        Pair<DoubleMatrix, DoubleMatrix> buffer = getNextMiniBatch(full ? batch : lastBatch);
+        if (buffer == null)
+            return null;
+        if (full)
+            batch = buffer;
+        else
+            lastBatch = buffer;
+        return buffer;
+    }
+
+    /**
+     * Get a minibatch of size batchsize, filling the given buffers.
+     * @param buffer a pair of X and Y matrices to be filled (can be null),
+     *               they are reallocated if they don't have the right shape
+     * @return the filled buffer, or null if the epoch is finished (the dataset is then reset)
+     */
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch(Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        if (order == null)
+            this.reset();
+
+        // stop the epoch
+        if (currIndex >= order.length) {
+            this.reset();
+            return null;
+        }
+
+        // get the next minibatch
+        int start = currIndex;
+        int end = Math.min(start + batchsize, order.length);
+        currIndex = end;
+        return getMiniBatch(start, end, buffer);
+    }
+
+    /**
+     * Get the samples at positions [start, end) of the current epoch's order.
+     * This does not change the state of the dataset.
+     * @param start the first position
+     * @param end the position after the last one
+     * @param buffer a pair of X and Y matrices to be filled (can be null),
+     *               they are reallocated if they don't have the right shape
+     * @return the filled buffer
+     */
+    public Pair<DoubleMatrix, DoubleMatrix> getMiniBatch(int start, int end, Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        buffer = ensureShape(buffer, end - start, getInputDims());
+        DoubleMatrix X = buffer.first;
+        DoubleMatrix Y = buffer.second;
+        for (int i = start; i < end; i++) {
+            copyInput(order[i], X, i - start);
+            Y.data[i - start] = getLabel(order[i]);
+        }
+        return buffer;
+    }
+
+    /**
+     * Get a minibatch of size batchsize, with the input features in a sparse matrix
+     * (to be fed to a {@link minet.layer.Linear} layer). The returned matrices are reused by the next call,
+     * so they must not be kept across calls.
+     * @return a pair of X (feature values, sparse) and Y (labels), or null if the epoch is finished
+     */
+    public Pair<SparseMatrix, DoubleMatrix> getNextSparseMiniBatch() {
+        Pair<SparseMatrix, DoubleMatrix> buffer = getNextSparseMiniBatch(sparseBatch);
+        if (buffer != null)
+            sparseBatch = buffer;
+        return buffer;
+    }
+
+    /**
+     * Get a minibatch of size batchsize, with the input features in a sparse matrix, filling the given buffers.
+     * @param buffer a pair of X and Y matrices to be filled (can be null)
+     * @return the filled buffer, or null if the epoch is finished (the dataset is then reset)
+     */
+    public Pair<SparseMatrix, DoubleMatrix> getNextSparseMiniBatch(Pair<SparseMatrix, DoubleMatrix> buffer) {
+        if (order == null)
+            this.reset();
+
+        // stop the epoch
+        if (currIndex >= order.length) {
+            this.reset();
+            return null;
+        }
+
+        // get the next minibatch
+        int start = currIndex;
+        int end = Math.min(start + batchsize, order.length);
+        currIndex = end;
+        return getSparseMiniBatch(start, end, buffer);
+    }
+
+    /**
+     * Get the samples at positions [start, end) of the current epoch's order, with the input features
+     * in a sparse matrix. This does not change the state of the dataset.
+     * @param start the first position
+     * @param end the position after the last one
+     * @param buffer a pair of X and Y matrices to be filled (can be null)
+     * @return the filled buffer
+     */
+    public Pair<SparseMatrix, DoubleMatrix> getSparseMiniBatch(int start, int end,
+                                                              Pair<SparseMatrix, DoubleMatrix> buffer) {
+        int rows = end - start;
+        if (buffer == null)
+            buffer = new Pair<SparseMatrix, DoubleMatrix>(new SparseMatrix(getInputDims(), rows, rows * 16), null);
+        if (buffer.second == null || buffer.second.rows != rows)
+            buffer.second = new DoubleMatrix(rows, 1);
+        SparseMatrix X = buffer.first;
+        DoubleMatrix Y = buffer.second;
+        X.clear(getInputDims());
+        for (int i = start; i < end; i++) {
+            copyInputSparse(order[i], X);
+            Y.data[i - start] = getLabel(order[i]);
+        }
+        return buffer;
+    }
+
+    /**
+     * Make sure that a pair of mini-batch matrices has the given shape.
+     * @param buffer a pair of X and Y (can be null)
+     * @param rows the number of samples
+     * @param columns the number of input features
+     * @return buffer if it has the right shape, otherwise a newly allocated pair
+     */
+    public static Pair<DoubleMatrix, DoubleMatrix> ensureShape(Pair<DoubleMatrix, DoubleMatrix> buffer,
+                                                               int rows, int columns) {
+        if (buffer == null || buffer.first.rows != rows || buffer.first.columns != columns)
+            buffer = new Pair<DoubleMatrix, DoubleMatrix>(new DoubleMatrix(rows, columns), new DoubleMatrix(rows, 1));
+        return buffer;
+    }
+}
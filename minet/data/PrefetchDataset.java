@@ -0,0 +1,300 @@
+// File: PrefetchDataset.java
+// PrefetchDataset class
+package minet.data;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * A wrapper around a {@link MatrixDataset} which prepares the next mini-batches on a background thread,
+ * so that data preparation overlaps with computation.
+ * The mini-batches are filled into a fixed ring of reusable buffers; at most depth mini-batches
+ * are prepared ahead of the one being used.
+ * The wrapper returns exactly the same sequence of mini-batches as the wrapped dataset,
+ * including the null at the end of each epoch and the reshuffling when {@link #reset()} is called.
+ *
+ * The kind of mini-batches prepared, dense ({@link #getNextMiniBatch()}) or sparse
+ * ({@link #getNextSparseMiniBatch()}), is chosen when the wrapper is created; asking for the other kind
+ * throws an IllegalStateException. Random access ({@link #getMiniBatch}, {@link #getSparseMiniBatch})
+ * goes directly to the wrapped dataset.
+ * @author Phong Le
+ */
+public class PrefetchDataset extends MatrixDataset {
+
+    private static final long serialVersionUID = -9026928083614864122L;
+
+    static final int END = -1;    // signals the end of an epoch
+    static final int ERROR = -2;  // signals that the background thread failed
+
+    /**
+     * A mini-batch buffer of the ring (only one of the pairs is used, depending on the kind of mini-batches).
+     */
+    static class Slot {
+        Pair<DoubleMatrix, DoubleMatrix> dense;
+        Pair<SparseMatrix, DoubleMatrix> sparse;
+    }
+
+    MatrixDataset data;  // the wrapped dataset
+    int depth;           // the number of mini-batches prepared ahead
+    boolean sparse;      // if true, sparse mini-batches are prepared
+
+    // ring of mini-batch buffers; the queues contain indices of the buffers
+    transient Slot[] ring;
+    transient ArrayBlockingQueue<Integer> free;   // buffers which can be filled
+    transient ArrayBlockingQueue<Integer> ready;  // filled buffers (or END/ERROR), in order
+    transient int current;                        // the buffer given to the user by the last call
+    transient Thread producer;
+    transient volatile RuntimeException error;
+
+    /**
+     * Constructor for PrefetchDataset, preparing dense mini-batches
+     * @param data the dataset to wrap
+     * @param depth the number of mini-batches prepared ahead (the size of the queue)
+     */
+    public PrefetchDataset(MatrixDataset data, int depth) {
+        this(data, depth, false);
+    }
+
+    /**
+     * Constructor for PrefetchDataset
+     * @param data the dataset to wrap
+     * @param depth the number of mini-batches prepared ahead (the size of the queue)
+     * @param sparse if true, sparse mini-batches are prepared (see {@link #getNextSparseMiniBatch()}),
+     * otherwise dense ones (see {@link #getNextMiniBatch()})
+     */
+    public PrefetchDataset(MatrixDataset data, int depth, boolean sparse) {
+        super(data.batchsize, data.shuffle, data.rnd);
+        if (depth < 1)
+            throw new IllegalArgumentException("depth must be positive");
+        this.data = data;
+        this.depth = depth;
+        this.sparse = sparse;
+    }
+
+    @Override
+    public void fromFile(String path) throws IOException {
+        stop();
+        data.fromFile(path);
+    }
+
+    @Override
+    public int getSize() {
+        return data.getSize();
+    }
+
+    @Override
+    public int getInputDims() {
+        return data.getInputDims();
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return data.isRandomAccess();
+    }
+
+    @Override
+    protected void copyInput(int index, DoubleMatrix X, int row) {
+        data.copyInput(index, X, row);
+    }
+
+    @Override
+    protected void copyInputSparse(int index, SparseMatrix X) {
+        data.copyInputSparse(index, X);
+    }
+
+    @Override
+    protected int getLabel(int index) {
+        return data.getLabel(index);
+    }
+
+    /**
+     * Must be called before using this dataset.
+     * The mini-batches prepared so far are discarded, and the wrapped dataset is reset.
+     */
+    @Override
+    public void reset() {
+        stop();
+        data.reset();
+    }
+
+    /**
+     * Get the next mini-batch prepared by the background thread. The returned matrices are reused,
+     * so they must not be kept across calls.
+     * @return a pair of X (feature values) and Y (labels), or null if the epoch is finished
+     */
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch() {
+        if (sparse)
+            throw new IllegalStateException("this dataset prefetches sparse mini-batches");
+        int slot = takeReady();
+        return slot == END ? null : ring[slot].dense;
+    }
+
+    /**
+     * Hand the buffer given out last time back to the background thread, and take the next prepared one.
+     * @return the index of the buffer, or END if the epoch is finished
+     */
+    int takeReady() {
+        if (producer == null)
+            start();
+
+        // the buffer given out last time can now be refilled
+        if (current >= 0) {
+            free.add(current);
+            current = -1;
+        }
+
+        int slot;
+        try {
+            slot = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (slot == ERROR) {
+            stop();
+            throw error;
+        }
+        if (slot != END)
+            current = slot;
+        return slot;
+    }
+
+    /**
+     * Same as {@link #getNextMiniBatch()}, but copied into the given buffer.
+     */
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch(Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        Pair<DoubleMatrix, DoubleMatrix> batch = getNextMiniBatch();
+        if (batch == null)
+            return null;
+        buffer = ensureShape(buffer, batch.first.rows, batch.first.columns);
+        System.arraycopy(batch.first.data, 0, buffer.first.data, 0, batch.first.length);
+        System.arraycopy(batch.second.data, 0, buffer.second.data, 0, batch.second.length);
+        return buffer;
+    }
+
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getMiniBatch(int start, int end, Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        return data.getMiniBatch(start, end, buffer);
+    }
+
+    /**
+     * Get the next sparse mini-batch prepared by the background thread. The returned matrices are reused,
+     * so they must not be kept across calls.
+     * @return a pair of X (feature values, sparse) and Y (labels), or null if the epoch is finished
+     */
+    @Override
+    public Pair<SparseMatrix, DoubleMatrix> getNextSparseMiniBatch() {
+        if (!sparse)
+            throw new IllegalStateException("this dataset prefetches dense mini-batches");
+        int slot = takeReady();
+        return slot == END ? null : ring[slot].sparse;
+    }
+
+    @Override
+    public Pair<SparseMatrix, DoubleMatrix> getNextSparseMiniBatch(Pair<SparseMatrix, DoubleMatrix> buffer) {
+        Pair<SparseMatrix, DoubleMatrix> batch = getNextSparseMiniBatch();
+        if (batch == null)
+            return null;
+        int rows = batch.first.rows;
+        if (buffer == null)
+            buffer = new Pair<SparseMatrix, DoubleMatrix>(null, null);
+        buffer.first = batch.first.getRows(0, rows, buffer.first);
+        if (buffer.second == null || buffer.second.rows != rows)
+            buffer.second = new DoubleMatrix(rows, 1);
+        System.arraycopy(batch.second.data, 0, buffer.second.data, 0, rows);
+        return buffer;
+    }
+
+    @Override
+    public Pair<SparseMatrix, DoubleMatrix> getSparseMiniBatch(int start, int end,
+                                                              Pair<SparseMatrix, DoubleMatrix> buffer) {
+        return data.getSparseMiniBatch(start, end, buffer);
+    }
+
+    /**
+     * Stop the background thread. It is started again by the next request for a mini-batch.
+     */
+    public void shutdown() {
+        stop();
+    }
+
+    /**
+     * Start the background thread, which fills the buffers in the ring one after another.
+     */
+    void start() {
+        if (ring == null) {
+            ring = new Slot[depth + 1];  // depth buffers being prepared, one being used
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = new Slot();
+            }
+        }
+        free = new ArrayBlockingQueue<Integer>(ring.length);
+        ready = new ArrayBlockingQueue<Integer>(ring.length + 1);
+        for (int i = 0; i < ring.length; i++) {
+            free.add(i);
+        }
+        current = -1;
+        error = null;
+
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        int slot = free.take();
+                        Slot buffer = ring[slot];
+                        boolean end;
+                        if (sparse) {
+                            Pair<SparseMatrix, DoubleMatrix> batch = data.getNextSparseMiniBatch(buffer.sparse);
+                            end = batch == null;
+                            if (!end)
+                                buffer.sparse = batch;
+                        } else {
+                            Pair<DoubleMatrix, DoubleMatrix> batch = data.getNextMiniBatch(buffer.dense);
+                            end = batch == null;
+                            if (!end)
+                                buffer.dense = batch;
+                        }
+                        if (end) {
+                            // the wrapped dataset has been reset, continue with the next epoch
+                            free.put(slot);
+                            ready.put(END);
+                        } else {
+                            ready.put(slot);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // stopped by stop()
+                } catch (RuntimeException e) {
+                    error = e;
+                    ready.clear();
+                    ready.add(ERROR);
+                }
+            }
+        }, "minet-prefetch");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Stop the background thread and discard the prepared mini-batches.
+     */
+    void stop() {
+        if (producer == null)
+            return;
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer = null;
+    }
+}
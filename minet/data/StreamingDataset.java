@@ -0,0 +1,348 @@
+// File: StreamingDataset.java
+// StreamingDataset class
+package minet.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Abstract class for datasets read incrementally from one or more files, for training sets larger than the heap.
+ * Only a bounded shuffle buffer of samples is kept in memory: it is filled from the files, and each sample
+ * of a mini-batch is taken from a random slot of the buffer, which is then refilled with the next sample read.
+ * The shuffling is therefore approximate (a sample can only move by about the buffer size); the order of the files
+ * is also shuffled at each epoch. Without shuffling, the samples are returned in file order.
+ * Memory use does not depend on the size of the dataset, and the first mini-batch is available as soon as
+ * the buffer is filled.
+ *
+ * Mini-batches are read with {@link #getNextMiniBatch()} (or the sparse variants), which returns null
+ * and resets the dataset at the end of an epoch, like any MatrixDataset. The samples have no random access
+ * (see {@link #isRandomAccess()}): {@link #getMiniBatch(int, int, Pair)},
+ * {@link #getSparseMiniBatch(int, int, Pair)}, {@link #copyInput(int, DoubleMatrix, int)} and
+ * {@link #getLabel(int)} throw an UnsupportedOperationException, and so do the methods of MatrixDataset built
+ * on them. Classes which need them ({@link minet.eval.Evaluator}, {@link minet.optim.HogwildTrainer},
+ * {@link SubsetDataset}) reject a streaming dataset with an IllegalArgumentException.
+ * A streaming dataset is serializable: the file being read is not stored, but opened again by the next
+ * mini-batch, at the sample where the reading stopped.
+ * Child classes implement {@link #open(String)}, which parses a file format.
+ * @author Phong Le
+ */
+public abstract class StreamingDataset extends MatrixDataset {
+
+    private static final long serialVersionUID = 5196900947234244029L;
+
+    /**
+     * A reader of the samples of a file.
+     */
+    public interface SampleReader extends Closeable {
+        /**
+         * @return the number of samples in the file, or -1 if it is unknown
+         */
+        public int getSize();
+
+        /**
+         * @return the number of input features
+         */
+        public int getInputDims();
+
+        /**
+         * Read the next sample.
+         * @param x an array to be filled with the input features
+         * @param offset the position of the first feature in x
+         * @return the label of the sample, or -1 if there are no more samples
+         */
+        public int next(double[] x, int offset) throws IOException;
+    }
+
+    protected List<String> paths = new ArrayList<String>();  // the files of the dataset
+    protected int inputDims;
+    protected int size;  // the number of samples, -1 if unknown (see getSize)
+
+    // shuffle buffer: a circular queue of count samples, starting at head
+    int capacity;
+    double[] features;  // row-major [capacity x inputDims]
+    int[] labels;
+    int head, count;
+
+    // reading state of the current epoch
+    List<String> fileOrder;
+    int nextFile;              // index in fileOrder of the next file to be opened
+    transient SampleReader reader;  // null if no file is open (e.g. after deserialization, see fill)
+    boolean reading;           // true if a file of the epoch is being read (its reader may have to be reopened)
+    int fileSamples;           // the number of samples read from this file
+    boolean exhausted = true;  // true if all the files of the epoch have been read
+    int samplesRead;           // the number of samples read in the current epoch
+    int lastEpochSize = -1;    // the number of samples of the last complete epoch
+
+    /**
+     * @param batchsize size of each mini-batch
+     * @param shuffle if true, shuffle the samples (approximately) at each epoch
+     * @param rnd random generator for the shuffling
+     * @param bufferSize the number of samples of the shuffle buffer (at least batchsize)
+     */
+    public StreamingDataset(int batchsize, boolean shuffle, Random rnd, int bufferSize) {
+        super(batchsize, shuffle, rnd);
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        // a mini-batch is taken from the samples in the buffer
+        this.capacity = Math.max(bufferSize, batchsize);
+    }
+
+    /**
+     * Open a file of the dataset.
+     * @param path path to the file
+     * @return a reader of the samples of the file
+     */
+    protected abstract SampleReader open(String path) throws IOException;
+
+    /**
+     * Add a file to the dataset. Only the beginning of the file is read (e.g. a header).
+     * This can be called several times, for datasets split over several files.
+     * @param path path to the file
+     */
+    @Override
+    public void fromFile(String path) throws IOException {
+        SampleReader r = open(path);
+        try {
+            if (paths.isEmpty()) {
+                inputDims = r.getInputDims();
+                size = 0;
+            } else if (r.getInputDims() != inputDims) {
+                throw new IOException(path + " has " + r.getInputDims() + " input features, expected " + inputDims);
+            }
+            size = size < 0 || r.getSize() < 0 ? -1 : size + r.getSize();
+        } finally {
+            r.close();
+        }
+        paths.add(path);
+    }
+
+    /**
+     * Get the number of samples: the total given by the files, or if one of them does not tell,
+     * the number of samples of the last complete epoch (0 before).
+     * @return the number of samples
+     */
+    @Override
+    public int getSize() {
+        if (size >= 0)
+            return size;
+        return Math.max(lastEpochSize, 0);
+    }
+
+    @Override
+    public int getInputDims() {
+        return inputDims;
+    }
+
+    /**
+     * Start a new epoch: the files are closed, and read again (in a new random order if shuffling)
+     * by the next mini-batch.
+     */
+    @Override
+    public void reset() {
+        closeReader();
+        fileOrder = new ArrayList<String>(paths);
+        if (shuffle)
+            Collections.shuffle(fileOrder, rnd);
+        nextFile = 0;
+        exhausted = fileOrder.isEmpty();
+        head = 0;
+        count = 0;
+        samplesRead = 0;
+        if (features == null || features.length != capacity * inputDims) {
+            features = new double[capacity * inputDims];
+            labels = new int[capacity];
+        }
+    }
+
+    void closeReader() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            reader = null;
+        }
+        reading = false;
+    }
+
+    /**
+     * Read samples into the buffer until it is full or all the files are read.
+     */
+    void fill() {
+        try {
+            while (count < capacity && !exhausted) {
+                if (reader == null && reading) {
+                    reopen();
+                } else if (reader == null) {
+                    if (nextFile == fileOrder.size()) {
+                        exhausted = true;
+                        break;
+                    }
+                    reader = open(fileOrder.get(nextFile++));
+                    reading = true;
+                    fileSamples = 0;
+                }
+                int slot = (head + count) % capacity;
+                int label = reader.next(features, slot * inputDims);
+                if (label < 0) {
+                    closeReader();
+                    continue;
+                }
+                labels[slot] = label;
+                count++;
+                samplesRead++;
+                fileSamples++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open again the file being read (e.g. after deserialization, since the reader is not stored),
+     * and skip the samples already read from it.
+     */
+    void reopen() throws IOException {
+        reader = open(fileOrder.get(nextFile - 1));
+        double[] x = new double[inputDims];
+        for (int i = 0; i < fileSamples; i++) {
+            if (reader.next(x, 0) < 0)
+                throw new IOException(fileOrder.get(nextFile - 1) + " has fewer samples than when it was read");
+        }
+    }
+
+    /**
+     * Take a sample from the buffer (a random one if shuffling) and refill the buffer.
+     * @return the slot where the sample is, valid until the next call
+     */
+    int take() {
+        if (shuffle) {
+            // move the chosen sample to the head of the queue
+            int j = (head + rnd.nextInt(count)) % capacity;
+            if (j != head)
+                swap(j, head);
+        }
+        int slot = head;
+        head = (head + 1) % capacity;
+        count--;
+        return slot;
+    }
+
+    void swap(int a, int b) {
+        for (int k = 0, pa = a * inputDims, pb = b * inputDims; k < inputDims; k++, pa++, pb++) {
+            double tmp = features[pa];
+            features[pa] = features[pb];
+            features[pb] = tmp;
+        }
+        int tmp = labels[a];
+        labels[a] = labels[b];
+        labels[b] = tmp;
+    }
+
+    /**
+     * Get the number of samples of the next mini-batch, starting the epoch if needed.
+     * @return the number of samples, 0 if the epoch is finished (the dataset is then reset)
+     */
+    int nextBatchSize() {
+        if (fileOrder == null)
+            reset();
+        fill();
+        if (count == 0) {
+            lastEpochSize = samplesRead;
+            reset();
+            return 0;
+        }
+        return Math.min(batchsize, count);
+    }
+
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch() {
+        Pair<DoubleMatrix, DoubleMatrix> buffer = getNextMiniBatch(batch);
+        if (buffer != null)
+            batch = buffer;
+        return buffer;
+    }
+
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getNextMiniBatch(Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        int n = nextBatchSize();
+        if (n == 0)
+            return null;
+        buffer = ensureShape(buffer, n, inputDims);
+        double[] x = buffer.first.data;
+        for (int i = 0; i < n; i++) {
+            // the slot taken is not overwritten before the next take
+            int slot = take();
+            for (int j = 0, p = slot * inputDims; j < inputDims; j++, p++) {
+                x[i + j * n] = features[p];
+            }
+            buffer.second.data[i] = labels[slot];
+            fill();
+        }
+        return buffer;
+    }
+
+    @Override
+    public Pair<SparseMatrix, DoubleMatrix> getNextSparseMiniBatch(Pair<SparseMatrix, DoubleMatrix> buffer) {
+        int n = nextBatchSize();
+        if (n == 0)
+            return null;
+        if (buffer == null)
+            buffer = new Pair<SparseMatrix, DoubleMatrix>(new SparseMatrix(inputDims, n, n * 16), null);
+        if (buffer.second == null || buffer.second.rows != n)
+            buffer.second = new DoubleMatrix(n, 1);
+        SparseMatrix X = buffer.first;
+        X.clear(inputDims);
+        for (int i = 0; i < n; i++) {
+            int slot = take();
+            for (int j = 0, p = slot * inputDims; j < inputDims; j++, p++) {
+                if (features[p] != 0)
+                    X.add(j, features[p]);
+            }
+            X.endRow();
+            buffer.second.data[i] = labels[slot];
+            fill();
+        }
+        return buffer;
+    }
+
+    /**
+     * @return false: the samples can only be read in the order of the stream
+     */
+    @Override
+    public boolean isRandomAccess() {
+        return false;
+    }
+
+    @Override
+    public Pair<DoubleMatrix, DoubleMatrix> getMiniBatch(int start, int end, Pair<DoubleMatrix, DoubleMatrix> buffer) {
+        throw new UnsupportedOperationException("a streaming dataset has no random access");
+    }
+
+    @Override
+    public Pair<SparseMatrix, DoubleMatrix> getSparseMiniBatch(int start, int end,
+                                                              Pair<SparseMatrix, DoubleMatrix> buffer) {
+        throw new UnsupportedOperationException("a streaming dataset has no random access");
+    }
+
+    @Override
+    protected void copyInput(int index, DoubleMatrix X, int row) {
+        throw new UnsupportedOperationException("a streaming dataset has no random access");
+    }
+
+    @Override
+    protected int getLabel(int index) {
+        throw new UnsupportedOperationException("a streaming dataset has no random access");
+    }
+}
@@ -0,0 +1,97 @@
+// File: SubsetDataset.java
+// SubsetDataset class
+package minet.data;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.jblas.DoubleMatrix;
+
+import minet.util.SparseMatrix;
+
+/**
+ * A view of some of the samples of another dataset (no sample is copied),
+ * e.g. a fixed random subset of a development set, for frequent and cheap estimates of the accuracy
+ * (see {@link #random(MatrixDataset, int, Random)}).
+ * @author Phong Le
+ */
+public class SubsetDataset extends MatrixDataset {
+
+    private static final long serialVersionUID = 6539767748278112818L;
+
+    MatrixDataset data;  // the whole dataset
+    int[] indices;       // the indices (in data) of the samples of the subset
+
+    /**
+     * @param data the whole dataset
+     * @param indices the indices (in data) of the samples of the subset
+     * @param batchsize size of each mini-batch
+     * @param shuffle if true, shuffle the subset at the beginning of each epoch
+     * @param rnd random generator for the shuffling
+     * @throws IllegalArgumentException if data has no random access (see {@link MatrixDataset#isRandomAccess()})
+     */
+    public SubsetDataset(MatrixDataset data, int[] indices, int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+        if (!data.isRandomAccess())
+            throw new IllegalArgumentException("a subset needs a dataset with random access");
+        this.data = data;
+        this.indices = indices;
+    }
+
+    /**
+     * Create a subset of randomly chosen samples (without replacement), with the batch size of the whole dataset
+     * and without shuffling.
+     * @param data the whole dataset
+     * @param size the number of samples (all the samples if larger than the dataset)
+     * @param rnd random generator for choosing the samples
+     * @return a subset of data
+     */
+    public static SubsetDataset random(MatrixDataset data, int size, Random rnd) {
+        int n = data.getSize();
+        size = Math.min(size, n);
+        // partial Fisher-Yates shuffle: the first size positions are a uniform sample
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            int j = i + rnd.nextInt(n - i);
+            int tmp = all[i];
+            all[i] = all[j];
+            all[j] = tmp;
+        }
+        int[] indices = java.util.Arrays.copyOf(all, size);
+        java.util.Arrays.sort(indices);  // read the whole dataset in order
+        return new SubsetDataset(data, indices, data.getBatchSize(), false, rnd);
+    }
+
+    @Override
+    public void fromFile(String path) throws IOException {
+        throw new UnsupportedOperationException("a subset is not loaded from file");
+    }
+
+    @Override
+    public int getSize() {
+        return indices.length;
+    }
+
+    @Override
+    public int getInputDims() {
+        return data.getInputDims();
+    }
+
+    @Override
+    protected void copyInput(int index, DoubleMatrix X, int row) {
+        data.copyInput(indices[index], X, row);
+    }
+
+    @Override
+    protected void copyInputSparse(int index, SparseMatrix X) {
+        data.copyInputSparse(indices[index], X);
+    }
+
+    @Override
+    protected int getLabel(int index) {
+        return data.getLabel(indices[index]);
+    }
+}
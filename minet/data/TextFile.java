@@ -0,0 +1,353 @@
+// File: TextFile.java
+// TextFile class
+package minet.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import minet.util.Parallel;
+
+/**
+ * A parallel reader of datasets in the text format used by the examples (e.g. {@link minet.example.mnist.MNISTDataset}):
+ * <pre>
+ * first line:      [number of samples] [number of input features]
+ * following lines: [input features (double values, separated by spaces)] ; [label (an integer)]
+ * </pre>
+ * The file is memory-mapped and cut into line-aligned chunks, which are parsed in parallel on a fork-join pool.
+ * A first pass counts the samples of each chunk, so that the second pass can write the features and labels
+ * of a chunk straight into the preallocated arrays at the right offsets.
+ *
+ * Numbers are parsed from the bytes, without building strings. A value whose significant digits form an integer
+ * of at most 2^53 (i.e. which fits exactly in a double) and whose decimal exponent is at most 22 in absolute value
+ * (as printed by Java for most values) is computed by a single correctly rounded multiplication or division
+ * by an exact power of ten; other values (e.g. with more than 18 significant digits) are handed to
+ * {@link Double#parseDouble(String)}. The result is therefore identical to parsing
+ * every value with {@link Double#parseDouble(String)}.
+ *
+ * @author Phong Le
+ */
+public class TextFile {
+
+    static final int MIN_CHUNK_BYTES = 1 << 20;
+    static final int MAX_CHUNK_BYTES = 1 << 28;
+
+    // the powers of ten which are exact doubles
+    static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    public double[] features;  // input features, sample after sample (i.e. a row-major [size x inputDims] matrix)
+    public int[] labels;       // labels of the samples
+    public int inputDims;      // number of input features
+
+    /**
+     * Read a text file on the common fork-join pool.
+     * @param path path to the file
+     * @return the content of the file
+     */
+    public static TextFile read(String path) throws IOException {
+        return read(path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Read a text file.
+     * @param path path to the file
+     * @param pool the pool parsing the chunks
+     * @return the content of the file
+     */
+    public static TextFile read(final String path, ForkJoinPool pool) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+
+            // first line
+            long headerEnd = nextLineStart(channel, 0);
+            ByteBuffer header = ByteBuffer.allocate((int)Math.min(headerEnd, 1024));
+            channel.read(header, 0);
+            String[] ss = new String(header.array(), 0, header.position(), StandardCharsets.US_ASCII).trim().split(" ");
+            final int size = Integer.valueOf(ss[0]);
+            final TextFile file = new TextFile();
+            file.inputDims = Integer.valueOf(ss[1]);
+            if ((long)size * file.inputDims > Integer.MAX_VALUE - 8)
+                throw new IOException(path + " is too large");
+            file.features = new double[size * file.inputDims];
+            file.labels = new int[size];
+
+            // line-aligned chunks, a few per thread
+            long chunkBytes = (fileSize - headerEnd) / (4L * pool.getParallelism());
+            chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, chunkBytes));
+            ArrayList<MappedByteBuffer> list = new ArrayList<MappedByteBuffer>();
+            for (long start = headerEnd, end; start < fileSize; start = end) {
+                end = start + chunkBytes >= fileSize ? fileSize : nextLineStart(channel, start + chunkBytes);
+                list.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            }
+            final MappedByteBuffer[] chunks = list.toArray(new MappedByteBuffer[list.size()]);
+
+            // first pass: count the samples of each chunk, to find where each chunk starts in the arrays
+            final int[] first = new int[chunks.length + 1];
+            Parallel.parallelFor(pool, chunks.length, chunkBytes, new Parallel.Range() {
+                @Override
+                public void run(int start, int end) {
+                    for (int c = start; c < end; c++) {
+                        first[c + 1] = countLines(chunks[c]);
+                    }
+                }
+            });
+            for (int c = 0; c < chunks.length; c++) {
+                first[c + 1] += first[c];
+            }
+            if (first[chunks.length] < size)
+                throw new IOException(String.format("%s contains %d samples, %d expected",
+                        path, first[chunks.length], size));
+
+            // second pass: parse the chunks
+            try {
+                Parallel.parallelFor(pool, chunks.length, chunkBytes, new Parallel.Range() {
+                    @Override
+                    public void run(int start, int end) {
+                        for (int c = start; c < end && first[c] < size; c++) {
+                            new ChunkParser(chunks[c], file, path).parse(first[c], Math.min(first[c + 1], size));
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return file;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the position right after the first end of line at or after pos (or the end of the file)
+     */
+    static long nextLineStart(FileChannel channel, long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        while (true) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n < 0)
+                return channel.size();
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * @return the number of non-blank lines of a chunk
+     */
+    static int countLines(ByteBuffer buf) {
+        int count = 0;
+        boolean blank = true;
+        for (int i = 0, n = buf.limit(); i < n; i++) {
+            byte b = buf.get(i);
+            if (b == '\n') {
+                if (!blank)
+                    count++;
+                blank = true;
+            } else if (b > ' ') {
+                blank = false;
+            }
+        }
+        return blank ? count : count + 1;
+    }
+
+    /**
+     * Parser of the lines of one chunk.
+     */
+    static class ChunkParser {
+        final ByteBuffer buf;
+        final TextFile file;
+        final String path;
+        final int limit;
+        int pos;
+        int sample;
+
+        ChunkParser(ByteBuffer buf, TextFile file, String path) {
+            this.buf = buf;
+            this.file = file;
+            this.path = path;
+            this.limit = buf.limit();
+        }
+
+        /**
+         * Parse samples [start, end), which are the first (end - start) non-blank lines of the chunk.
+         */
+        void parse(int start, int end) {
+            int dims = file.inputDims;
+            double[] features = file.features;
+            for (sample = start; sample < end; sample++) {
+                skipBlankLines();
+                int offset = sample * dims;
+                int j = 0;
+                while (skipSpaces() && buf.get(pos) != ';') {
+                    if (j == dims)
+                        throw error("more than " + dims + " features");
+                    features[offset + j++] = parseDouble();
+                }
+                if (pos == limit || buf.get(pos) != ';')
+                    throw error("no label");
+                pos++;
+                skipSpaces();
+                file.labels[sample] = parseInt();
+                skipSpaces();
+                if (pos < limit && buf.get(pos) != '\n')
+                    throw error("unexpected characters after the label");
+            }
+        }
+
+        void skipBlankLines() {
+            while (pos < limit && (buf.get(pos) <= ' '))
+                pos++;
+        }
+
+        /**
+         * Skip spaces (but not the end of line).
+         * @return true if there is something left on the line
+         */
+        boolean skipSpaces() {
+            while (pos < limit) {
+                byte b = buf.get(pos);
+                if (b == '\n')
+                    return false;
+                if (b > ' ')
+                    return true;
+                pos++;
+            }
+            return false;
+        }
+
+        /**
+         * Parse the number at pos, up to the next space.
+         */
+        double parseDouble() {
+            int start = pos;
+            boolean negative = false;
+            byte b = buf.get(pos);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                pos++;
+            }
+
+            // significant digits in mantissa, with decimal exponent exp10
+            long mantissa = 0;
+            int nDigits = 0, exp10 = 0;
+            boolean point = false, digits = false;
+            for (; pos < limit; pos++) {
+                b = buf.get(pos);
+                if (b >= '0' && b <= '9') {
+                    digits = true;
+                    if (mantissa == 0 && b == '0') {
+                        // leading zero
+                    } else if (nDigits < 18) {
+                        // at most 18 digits, so that mantissa cannot overflow a long
+                        mantissa = 10 * mantissa + (b - '0');
+                        nDigits++;
+                    } else {
+                        return slowParseDouble(start);
+                    }
+                    if (point)
+                        exp10--;
+                } else if (b == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            if (digits && pos < limit && (b == 'e' || b == 'E')) {
+                pos++;
+                boolean negExp = false;
+                if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+                    negExp = buf.get(pos++) == '-';
+                int exp = 0;
+                boolean expDigits = false;
+                for (; pos < limit && (b = buf.get(pos)) >= '0' && b <= '9'; pos++) {
+                    expDigits = true;
+                    if (exp < 10000)
+                        exp = 10 * exp + (b - '0');
+                }
+                if (!expDigits)
+                    return slowParseDouble(start);
+                exp10 += negExp ? -exp : exp;
+            }
+            if (!digits || (pos < limit && buf.get(pos) > ' ')
+                    || mantissa > (1L << 53) || exp10 < -22 || exp10 > 22)
+                return slowParseDouble(start);
+
+            // both mantissa and 10^|exp10| are exact doubles, so the result is correctly rounded
+            double value = exp10 < 0 ? mantissa / POW10[-exp10] : mantissa * POW10[exp10];
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parse the token starting at start with {@link Double#parseDouble(String)}.
+         */
+        double slowParseDouble(int start) {
+            String token = token(start);
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error("invalid number '" + token + "'");
+            }
+        }
+
+        /**
+         * Parse the integer at pos, up to the next space.
+         */
+        int parseInt() {
+            int start = pos;
+            boolean negative = pos < limit && buf.get(pos) == '-';
+            if (negative || (pos < limit && buf.get(pos) == '+'))
+                pos++;
+            int value = 0, nDigits = 0;
+            byte b;
+            for (; pos < limit && (b = buf.get(pos)) >= '0' && b <= '9' && nDigits < 9; pos++, nDigits++) {
+                value = 10 * value + (b - '0');
+            }
+            if (nDigits > 0 && (pos == limit || buf.get(pos) <= ' '))
+                return negative ? -value : value;
+
+            String token = token(start);
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw error("invalid label '" + token + "'");
+            }
+        }
+
+        /**
+         * @return the token starting at start, moving pos to its end
+         */
+        String token(int start) {
+            pos = start;
+            while (pos < limit && buf.get(pos) > ' ')
+                pos++;
+            byte[] bytes = new byte[pos - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buf.get(start + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        UncheckedIOException error(String message) {
+            return new UncheckedIOException(new IOException(
+                    String.format("%s, sample %d: %s", path, sample, message)));
+        }
+    }
+}
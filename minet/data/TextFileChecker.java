@@ -0,0 +1,63 @@
+// File: TextFileChecker.java
+// TextFileChecker class
+package minet.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * TextFileChecker class. This class is to make sure that {@link TextFile} parses numbers exactly as
+ * {@link Double#parseDouble(String)} does, in particular the numbers at the limits of its fast path
+ * (long mantissas, large exponents, subnormals).
+ * @author Phong Le
+ */
+public class TextFileChecker {
+
+    static final String[] VALUES = {
+            "0", "-0.0", "1", "0.1", "0.30000000000000004", "0.10196078431372549", "-2.5e-3", "+7E2",
+            "9007199254740992", "9007199254740993", "9007199254740993e-10",
+            "123456789012345678", "1234567890123456789", "9223372036854775807", "9223372036854775808",
+            "9999999999999999999", "0.9999999999999999999", "18446744073709551615", "99999999999999999999e-5",
+            "0.00000000000000000000000001", "1.000000000000000000000",
+            "1e22", "1e23", "1e-22", "1e-23", "4.9e-324", "2.2250738585072014E-308", "1.7976931348623157e308",
+    };
+
+    /**
+     * Write the values into a file (one value per sample), read it with {@link TextFile} and compare
+     * the values with those of {@link Double#parseDouble(String)}, bit by bit.
+     */
+    public static void checkParsing(String[] values) throws IOException {
+        File file = File.createTempFile("minet-textfile", ".txt");
+        try {
+            PrintWriter out = new PrintWriter(file, "US-ASCII");
+            out.println(values.length + " 1");
+            for (String value : values) {
+                out.println(value + " ; 0");
+            }
+            out.close();
+
+            TextFile text = TextFile.read(file.getPath());
+            boolean pass = true;
+            for (int i = 0; i < values.length; i++) {
+                double expected = Double.parseDouble(values[i]);
+                if (Double.doubleToRawLongBits(text.features[i]) != Double.doubleToRawLongBits(expected)) {
+                    System.err.println(values[i] + ": " + text.features[i] + " instead of " + expected);
+                    pass = false;
+                }
+            }
+
+            if (pass)
+                System.out.println("correct parsing of " + values.length + " values");
+            else
+                System.err.println("incorrect parsing");
+        } finally {
+            file.delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Test Parsing ---");
+        checkParsing(VALUES);
+    }
+}
@@ -0,0 +1,60 @@
+// File: Accuracy.java
+// Accuracy class
+package minet.eval;
+
+import org.jblas.DoubleMatrix;
+
+import minet.backend.Backends;
+
+/**
+ * Classification accuracy: the proportion of instances whose label has the highest output.
+ * @author Phong Le
+ */
+public class Accuracy implements Metric {
+
+    long correct;
+    long total;
+    int[] preds;  // workspace
+
+    public Accuracy() { }
+
+    @Override
+    public void update(DoubleMatrix Y, DoubleMatrix Yhat) {
+        if (preds == null || preds.length < Yhat.rows)
+            preds = new int[Yhat.rows];
+        Backends.get().rowArgmaxs(Yhat, preds);
+        for (int i = 0; i < Yhat.rows; i++) {
+            if (preds[i] == (int) Y.data[i])
+                correct++;
+        }
+        total += Yhat.rows;
+    }
+
+    @Override
+    public void merge(Metric other) {
+        Accuracy o = (Accuracy)other;
+        correct += o.correct;
+        total += o.total;
+    }
+
+    @Override
+    public double getValue() {
+        return total == 0 ? 0 : (double)correct / total;
+    }
+
+    @Override
+    public void reset() {
+        correct = 0;
+        total = 0;
+    }
+
+    @Override
+    public Metric replicate() {
+        return new Accuracy();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("accuracy: %.4f", getValue());
+    }
+}
@@ -0,0 +1,88 @@
+// File: ConfusionMatrix.java
+// ConfusionMatrix class
+package minet.eval;
+
+import org.jblas.DoubleMatrix;
+
+import minet.backend.Backends;
+
+/**
+ * A confusion matrix: counts[y][p] is the number of instances with label y predicted as p
+ * (the output with the highest value). Its value is the accuracy.
+ * @author Phong Le
+ */
+public class ConfusionMatrix implements Metric {
+
+    long[][] counts;
+    int[] preds;  // workspace
+
+    /**
+     * @param nClasses the number of classes
+     */
+    public ConfusionMatrix(int nClasses) {
+        this.counts = new long[nClasses][nClasses];
+    }
+
+    @Override
+    public void update(DoubleMatrix Y, DoubleMatrix Yhat) {
+        if (preds == null || preds.length < Yhat.rows)
+            preds = new int[Yhat.rows];
+        Backends.get().rowArgmaxs(Yhat, preds);
+        for (int i = 0; i < Yhat.rows; i++) {
+            counts[(int) Y.data[i]][preds[i]]++;
+        }
+    }
+
+    @Override
+    public void merge(Metric other) {
+        ConfusionMatrix o = (ConfusionMatrix)other;
+        for (int y = 0; y < counts.length; y++) {
+            for (int p = 0; p < counts.length; p++) {
+                counts[y][p] += o.counts[y][p];
+            }
+        }
+    }
+
+    /**
+     * @return counts[y][p] is the number of instances with label y predicted as p
+     */
+    public long[][] getCounts() {
+        return counts;
+    }
+
+    @Override
+    public double getValue() {
+        long correct = 0, total = 0;
+        for (int y = 0; y < counts.length; y++) {
+            for (int p = 0; p < counts.length; p++) {
+                total += counts[y][p];
+            }
+            correct += counts[y][y];
+        }
+        return total == 0 ? 0 : (double)correct / total;
+    }
+
+    @Override
+    public void reset() {
+        for (long[] row : counts) {
+            java.util.Arrays.fill(row, 0);
+        }
+    }
+
+    @Override
+    public Metric replicate() {
+        return new ConfusionMatrix(counts.length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("confusion matrix (rows: labels, columns: predictions)\n");
+        for (long[] row : counts) {
+            for (long c : row) {
+                str.append(String.format("%7d", c));
+            }
+            str.append("\n");
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,194 @@
+// File: Evaluator.java
+// Evaluator class
+package minet.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jblas.DoubleMatrix;
+
+import minet.data.MatrixDataset;
+import minet.layer.DataParallel;
+import minet.layer.Layer;
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Evaluates a network on a dataset with several threads. The mini-batches of the dataset are split into
+ * one contiguous shard per thread; each thread runs forward passes (in evaluation mode) on its own replica
+ * of the network (see {@link Layer#replicate()}, the replicas share the weights) and accumulates
+ * its own replicas of the metrics, which are merged at the end. The mini-batches are the same
+ * as with a single thread, so the results do not depend on the number of threads.
+ * <pre>
+ * Evaluator evaluator = new Evaluator(net, 8);
+ * Accuracy acc = new Accuracy();
+ * MeanLoss loss = new MeanLoss(new SoftmaxCrossEntropy());
+ * evaluator.evaluate(devset, false, acc, loss);
+ * </pre>
+ * The replicas are created once, so an evaluator can be used after each training epoch. A {@link DataParallel}
+ * network is evaluated through the network it wraps.
+ * @author Phong Le
+ */
+public class Evaluator {
+
+    Layer net;          // the network being evaluated, also used by the first worker
+    Layer[] replicas;   // replicas[0] is net
+    ExecutorService pool;  // null if there is only one worker
+
+    /**
+     * @param net the network
+     * @param nThreads the number of worker threads
+     */
+    public Evaluator(Layer net, int nThreads) {
+        if (nThreads < 1)
+            throw new IllegalArgumentException("nThreads must be positive");
+        if (net instanceof DataParallel)
+            net = ((DataParallel)net).getNetwork();
+        this.net = net;
+        this.replicas = new Layer[nThreads];
+        this.replicas[0] = net;
+        for (int w = 1; w < nThreads; w++) {
+            replicas[w] = net.replicate();
+            replicas[w].setTraining(false);
+        }
+        if (nThreads > 1) {
+            this.pool = Executors.newFixedThreadPool(nThreads - 1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "minet-evaluator");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /**
+     * Evaluate the network on a dataset. The dataset is reset before and after (as after a full pass over it),
+     * and must not be used by other threads in the meantime. The network is run in evaluation mode,
+     * then put back in the mode it was in (see {@link Layer#isTraining()}).
+     * @param data the dataset
+     * @param sparse if true, the input features are fed to the network as sparse matrices
+     * @param metrics the metrics, to which the results are added
+     * @throws IllegalArgumentException if data has no random access (see {@link MatrixDataset#isRandomAccess()})
+     */
+    public void evaluate(final MatrixDataset data, final boolean sparse, Metric... metrics) {
+        if (!data.isRandomAccess())
+            throw new IllegalArgumentException("evaluation needs a dataset with random access, not a "
+                    + data.getClass().getSimpleName());
+        data.reset();
+        boolean training = net.isTraining();
+        net.setTraining(false);
+        try {
+            int size = data.getSize(), batchsize = data.getBatchSize();
+            int nBatches = (size + batchsize - 1) / batchsize;
+            int nShards = Math.min(replicas.length, Math.max(nBatches, 1));
+
+            List<Metric[]> shardMetrics = new ArrayList<Metric[]>();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int s = nShards - 1; s >= 0; s--) {
+                final Layer replica = replicas[s];
+                final Metric[] local = new Metric[metrics.length];
+                for (int m = 0; m < metrics.length; m++) {
+                    local[m] = metrics[m].replicate();
+                }
+                shardMetrics.add(local);
+                // shard s takes the batches [s * nBatches / nShards, (s+1) * nBatches / nShards)
+                final int start = (int)((long)nBatches * s / nShards) * batchsize;
+                final int end = Math.min((int)((long)nBatches * (s + 1) / nShards) * batchsize, size);
+                if (s == 0) {
+                    // the first shard is evaluated by the calling thread
+                    evaluateShard(replica, data, sparse, start, end, local);
+                } else {
+                    futures.add(pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            evaluateShard(replica, data, sparse, start, end, local);
+                        }
+                    }));
+                }
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+
+            for (Metric[] local : shardMetrics) {
+                for (int m = 0; m < metrics.length; m++) {
+                    metrics[m].merge(local[m]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new RuntimeException(cause);
+        } finally {
+            net.setTraining(training);
+            data.reset();
+        }
+    }
+
+    /**
+     * Compute the classification accuracy of the network on a dataset.
+     * @param data the dataset
+     * @param sparse if true, the input features are fed to the network as sparse matrices
+     * @return the accuracy (in [0, 1])
+     */
+    public double accuracy(MatrixDataset data, boolean sparse) {
+        Accuracy acc = new Accuracy();
+        evaluate(data, sparse, acc);
+        return acc.getValue();
+    }
+
+    /**
+     * Evaluate the mini-batches of the samples [start, end).
+     */
+    static void evaluateShard(Layer net, MatrixDataset data, boolean sparse, int start, int end, Metric[] metrics) {
+        int batchsize = data.getBatchSize();
+        Pair<DoubleMatrix, DoubleMatrix> batch = null;
+        Pair<SparseMatrix, DoubleMatrix> sparseBatch = null;
+        for (int i = start; i < end; i += batchsize) {
+            int j = Math.min(i + batchsize, end);
+            Object X;
+            DoubleMatrix Y;
+            if (sparse) {
+                sparseBatch = data.getSparseMiniBatch(i, j, sparseBatch);
+                X = sparseBatch.first;
+                Y = sparseBatch.second;
+            } else {
+                batch = data.getMiniBatch(i, j, batch);
+                X = batch.first;
+                Y = batch.second;
+            }
+            DoubleMatrix Yhat = net.forward(X);
+            for (Metric m : metrics) {
+                m.update(Y, Yhat);
+            }
+        }
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getNumThreads() {
+        return replicas.length;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,61 @@
+// File: MeanLoss.java
+// MeanLoss class
+package minet.eval;
+
+import org.jblas.DoubleMatrix;
+
+import minet.loss.Loss;
+
+/**
+ * The loss per instance over a dataset, for a loss function given the network's output
+ * (e.g. {@link minet.loss.SoftmaxCrossEntropy} for a network outputting logits).
+ * @author Phong Le
+ */
+public class MeanLoss implements Metric {
+
+    Loss loss;
+    double sum;  // sum of the losses of the instances
+    long total;
+
+    /**
+     * @param loss the loss function
+     */
+    public MeanLoss(Loss loss) {
+        this.loss = loss;
+    }
+
+    @Override
+    public void update(DoubleMatrix Y, DoubleMatrix Yhat) {
+        // loss functions return the mean over the mini-batch
+        sum += loss.forward(Y, Yhat) * Yhat.rows;
+        total += Yhat.rows;
+    }
+
+    @Override
+    public void merge(Metric other) {
+        MeanLoss o = (MeanLoss)other;
+        sum += o.sum;
+        total += o.total;
+    }
+
+    @Override
+    public double getValue() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    @Override
+    public void reset() {
+        sum = 0;
+        total = 0;
+    }
+
+    @Override
+    public Metric replicate() {
+        return new MeanLoss(loss.replicate());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.4f", loss, getValue());
+    }
+}
@@ -0,0 +1,44 @@
+// File: Metric.java
+// Metric interface
+package minet.eval;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * An interface for evaluation metrics (e.g. {@link Accuracy}, {@link TopKAccuracy}, {@link MeanLoss},
+ * {@link ConfusionMatrix}), accumulated over the mini-batches of a dataset.
+ * An {@link Evaluator} gives each of its worker threads a replica of each metric,
+ * and merges the replicas at the end.
+ * @author Phong Le
+ */
+public interface Metric {
+
+    /**
+     * Accumulate the predictions for a mini-batch.
+     * @param Y a [minibatch_size x 1] matrix, each row is the ground-truth label of an instance
+     * @param Yhat a [minibatch_size x d] matrix, each row is the output of the network for an instance
+     */
+    public void update(DoubleMatrix Y, DoubleMatrix Yhat);
+
+    /**
+     * Add what another metric of the same kind has accumulated.
+     * @param other a replica of this metric
+     */
+    public void merge(Metric other);
+
+    /**
+     * @return the value of the metric
+     */
+    public double getValue();
+
+    /**
+     * Forget what has been accumulated.
+     */
+    public void reset();
+
+    /**
+     * Create an empty metric of the same kind, e.g. for another thread.
+     * @return a new metric
+     */
+    public Metric replicate();
+}
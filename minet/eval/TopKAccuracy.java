@@ -0,0 +1,71 @@
+// File: TopKAccuracy.java
+// TopKAccuracy class
+package minet.eval;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Top-k accuracy: the proportion of instances whose label is among the k highest outputs.
+ * @author Phong Le
+ */
+public class TopKAccuracy implements Metric {
+
+    int k;
+    long correct;
+    long total;
+
+    /**
+     * @param k the number of highest outputs considered
+     */
+    public TopKAccuracy(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+    }
+
+    @Override
+    public void update(DoubleMatrix Y, DoubleMatrix Yhat) {
+        int n = Yhat.rows;
+        double[] y = Yhat.data;
+        for (int i = 0; i < n; i++) {
+            // the label is in the top k if fewer than k outputs are higher than its own
+            double target = y[i + (int) Y.data[i] * n];
+            int higher = 0;
+            for (int j = 0, p = i; j < Yhat.columns && higher < k; j++, p += n) {
+                if (y[p] > target)
+                    higher++;
+            }
+            if (higher < k)
+                correct++;
+        }
+        total += n;
+    }
+
+    @Override
+    public void merge(Metric other) {
+        TopKAccuracy o = (TopKAccuracy)other;
+        correct += o.correct;
+        total += o.total;
+    }
+
+    @Override
+    public double getValue() {
+        return total == 0 ? 0 : (double)correct / total;
+    }
+
+    @Override
+    public void reset() {
+        correct = 0;
+        total = 0;
+    }
+
+    @Override
+    public Metric replicate() {
+        return new TopKAccuracy(k);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("top-%d accuracy: %.4f", k, getValue());
+    }
+}
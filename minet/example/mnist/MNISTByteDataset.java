@@ -0,0 +1,79 @@
+package minet.example.mnist;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import minet.data.ByteArrayDataset;
+
+
+/**
+ * MNIST dataset with the pixels stored as bytes (see {@link ByteArrayDataset}), i.e. 8 times less memory
+ * than {@link MNISTDataset}. The text file (in the format of {@link MNISTDataset#fromFile(String)}) is read twice:
+ * first to find the range of each pixel and whether all the values are on the unit grid, then to quantize them.
+ * 8-bit images normalized as pixel / 255 are on the unit grid and are stored exactly (see
+ * {@link ByteArrayDataset#setUnitGrid(int)}); other data is quantized within the range of each pixel
+ * (see {@link ByteArrayDataset#setRange(double[], double[])}), i.e. rounded to one of 256 levels.
+ */
+public class MNISTByteDataset extends ByteArrayDataset {
+
+    private static final long serialVersionUID = -2331747710025129388L;
+
+    public MNISTByteDataset(int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+    }
+
+    /**
+     * Load MNIST data from file.
+     */
+    @Override
+    public void fromFile(String path) throws IOException {
+        // first pass: the range of each feature, and whether all the values are on the unit grid
+        BufferedReader br = new BufferedReader(new FileReader(path));
+        String[] ss = br.readLine().split(" ");
+        int size = Integer.valueOf(ss[0]);
+        inputDims = Integer.valueOf(ss[1]);
+        double[] min = new double[inputDims], max = new double[inputDims];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        boolean unitGrid = true;
+        for (int i = 0; i < size; i++) {
+            String[] sx = br.readLine().split(" ; ")[0].split(" ");
+            for (int j = 0; j < inputDims; j++) {
+                double v = j < sx.length ? Double.parseDouble(sx[j]) : 0;
+                min[j] = Math.min(min[j], v);
+                max[j] = Math.max(max[j], v);
+                unitGrid = unitGrid && isOnUnitGrid(v);
+            }
+        }
+        br.close();
+        if (size == 0) {
+            Arrays.fill(min, 0);
+            Arrays.fill(max, 0);
+        }
+        if (unitGrid)
+            setUnitGrid(inputDims);
+        else
+            setRange(min, max);
+
+        // second pass: the quantized features and the labels
+        br = new BufferedReader(new FileReader(path));
+        br.readLine();
+        features = new byte[size * inputDims];
+        labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            ss = br.readLine().split(" ; ");
+            String[] sx = ss[0].split(" ");
+            labels[i] = Integer.valueOf(ss[1]);
+            for (int j = 0; j < sx.length; j++) {
+                features[i * inputDims + j] = quantize(Double.parseDouble(sx[j]), j);
+            }
+            for (int j = sx.length; j < inputDims; j++) {
+                features[i * inputDims + j] = quantize(0, j);
+            }
+        }
+        br.close();
+    }
+}
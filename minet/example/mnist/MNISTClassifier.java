@@ -1,78 +1,55 @@
 package minet.example.mnist;
 
+import minet.data.MatrixDataset;
+import minet.data.PrefetchDataset;
+import minet.data.SubsetDataset;
+import minet.eval.Accuracy;
+import minet.eval.Evaluator;
 import minet.layer.*;
-import minet.loss.CrossEntropy;
+import minet.loss.SoftmaxCrossEntropy;
 import minet.loss.Loss;
+import minet.metrics.Metrics;
+import minet.metrics.Timer;
+import minet.optim.InstrumentedOptimizer;
 import minet.optim.Optimizer;
+import minet.optim.HogwildTrainer;
 import minet.optim.SGD;
+import minet.quant.Quantizer;
 import minet.util.Pair;
+import minet.util.SparseMatrix;
 
 import org.jblas.DoubleMatrix;
 import org.jblas.util.Logger;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.Random;
 
 import minet.layer.init.*;
 
 public class MNISTClassifier {
 
-    /**
-     * Convert a mini-batch of MNIST dataset to data structure that can be used by the network
-     * @param batch a list of MNIST items, each of which is a pair of (input image, output label)
-     * @return two DoubleMatrix objects: X (input) and Y (labels)
+	/** 
+     * calculate classification accuracy of an ANN on a given dataset.
+     * @param net an ANN model
+	 * @param data an MNIST dataset	 
+     * @return the classification accuracy value (double, in the range of [0,1])
     */
-    public static Pair<DoubleMatrix, DoubleMatrix> fromBatch(List<Pair<double[], Integer>> batch) {
-        if (batch == null)
-            return null;
-        
-        double[][] xs = new double[batch.size()][];
-        double[] ys = new double[batch.size()];
-        for (int i = 0; i < batch.size(); i++) {
-            xs[i] = batch.get(i).first; 
-            ys[i] = (double)batch.get(i).second;
-        }
-        DoubleMatrix X = new DoubleMatrix(xs);
-        DoubleMatrix Y = new DoubleMatrix(ys.length, 1, ys);
-        return new Pair<DoubleMatrix, DoubleMatrix>(X, Y);
+    public static double eval(Layer net, MatrixDataset data) {
+        return eval(net, data, false);
     }
 
 	/** 
      * calculate classification accuracy of an ANN on a given dataset.
      * @param net an ANN model
 	 * @param data an MNIST dataset	 
+	 * @param sparse if true, the input features are fed to the network as sparse matrices
      * @return the classification accuracy value (double, in the range of [0,1])
     */
-    public static double eval(Layer net, MNISTDataset data) {
-        // reset index of the data
-        data.reset();
-        
-        // the number of correct predictions so far
-        double correct = 0;
-
-        while (true) {
-            // we evaluate per mini-batch
-            Pair<DoubleMatrix, DoubleMatrix> batch = fromBatch(data.getNextMiniBatch());
-            if (batch == null)
-                break;
-
-            // perform forward pass to compute Yhat (the predictions)
-            // each row of Yhat is a probabilty distribution over 10 digits
-            DoubleMatrix Yhat = net.forward(batch.first);
-
-            // the predicted digit for each image is the one with the highest probability
-            int[] preds = Yhat.rowArgmaxs();
-
-            // count how many predictions are correct
-            for (int i = 0; i < preds.length; i++) {
-                if (preds[i] == (int) batch.second.data[i])
-                    correct++;
-            }
-        }
-
-        // compute classification accuracy
-        double acc = correct / data.getSize();
+    public static double eval(Layer net, MatrixDataset data, boolean sparse) {
+        // the dataset is split over one thread per core, each with a replica of the network
+        Evaluator evaluator = new Evaluator(net, Runtime.getRuntime().availableProcessors());
+        double acc = evaluator.accuracy(data, sparse);
+        evaluator.shutdown();
         return acc;
     }
 
@@ -80,28 +57,69 @@ public class MNISTClassifier {
      * train an ANN for MNIST
      * @param net an ANN model to be trained
 	 * @param loss a loss function object
-	 * @param optimizer the optimizer used for updating the model's weights (currently only SGD is supported)
+	 * @param optimizer the optimizer used for updating the model's weights (e.g. SGD, Adam)
 	 * @param traindata training dataset
 	 * @param devdata validation dataset (also called development dataset), used for early stopping
 	 * @param nEpochs the maximum number of training epochs
 	 * @param patience the maximum number of consecutive epochs where validation performance is allowed to non-increased, used for early stopping
     */
-    public static void train(Layer net, Loss loss, Optimizer optimizer, MNISTDataset traindata,
-                             MNISTDataset devdata, int nEpochs, int patience) {
+    public static void train(Layer net, Loss loss, Optimizer optimizer, MatrixDataset traindata,
+                             MatrixDataset devdata, int nEpochs, int patience) {
+        train(net, loss, optimizer, traindata, devdata, nEpochs, patience, false);
+    }
+
+	/** 
+     * train an ANN for MNIST, see {@link #train(Layer, Loss, Optimizer, MatrixDataset, MatrixDataset, int, int)}
+	 * @param sparse if true, the input features are fed to the network as sparse matrices
+	 *               (the first layer must then be a Linear layer)
+    */
+    public static void train(Layer net, Loss loss, Optimizer optimizer, MatrixDataset traindata,
+                             MatrixDataset devdata, int nEpochs, int patience, boolean sparse) {
+        train(net, loss, optimizer, traindata, devdata, nEpochs, patience, sparse, 0, null);
+    }
+
+	/** 
+     * train an ANN for MNIST, see {@link #train(Layer, Loss, Optimizer, MatrixDataset, MatrixDataset, int, int)}.
+     * The training loss and accuracy are accumulated during each epoch, from the outputs of the training steps
+     * (so the printed training accuracy is a running estimate, taken while the weights change).
+	 * @param sparse if true, the input features are fed to the network as sparse matrices
+	 *               (the first layer must then be a Linear layer)
+	 * @param evalEvery if positive, the accuracy on devsubset is estimated every evalEvery training steps,
+	 *                  and early stopping (patience) counts these estimates rather than epochs
+	 * @param devsubset a (small) subset of the validation dataset, e.g. see {@link SubsetDataset#random}
+    */
+    public static void train(Layer net, Loss loss, Optimizer optimizer, MatrixDataset traindata,
+                             MatrixDataset devdata, int nEpochs, int patience, boolean sparse,
+                             int evalEvery, MatrixDataset devsubset) {
 		int notAtPeak = 0;  // the number of times not at peak
-		double peakAcc = -1;  // the best accuracy of the previous epochs
+		double peakAcc = -1;  // the best accuracy of the previous epochs (or estimates)
 		double totalLoss = 0;  // the total loss of the current epoch
+        Accuracy trainAcc = new Accuracy();  // the training accuracy of the current epoch
+        int step = 0;  // the number of training steps so far
+        boolean stop = false;
+
+        // evaluation after each epoch, with one thread per core (see Evaluator)
+        Evaluator evaluator = new Evaluator(net, Runtime.getRuntime().availableProcessors());
+
+        // time spent getting the mini-batches vs. in the training steps (only recorded if metrics are on)
+        Timer batchTimer = Metrics.timer("train batch");
+        Timer stepTimer = Metrics.timer("train step");
 
         traindata.reset(); // reset index and shuffle the data before training
         
-        for (int e = 0; e < nEpochs; e++) {
+        for (int e = 0; e < nEpochs && !stop; e++) {
             totalLoss = 0;
+            trainAcc.reset();
+            Metrics.reset();
 
             while (true) {
                 // get the next mini-batch
-                Pair<DoubleMatrix, DoubleMatrix> batch = fromBatch(traindata.getNextMiniBatch());
+                Timer.Span span = batchTimer.start();
+                Pair<?, DoubleMatrix> batch = nextBatch(traindata, sparse);
                 if (batch == null)
                     break;
+                batchTimer.stop(span, batch.second.rows);
+                span = stepTimer.start();
 
                 // always reset the gradients before performing backward
                 optimizer.resetGradients();
@@ -109,20 +127,86 @@ public class MNISTClassifier {
                 // calculate the loss value
                 DoubleMatrix Yhat = net.forward(batch.first);
                 double lossVal = loss.forward(batch.second, Yhat);
+                trainAcc.update(batch.second, Yhat);
 
                 // calculate gradients of the weights using backprop algorithm
                 net.backward(loss.backward());
 
                 // update the weights using the calculated gradients
                 optimizer.updateWeights();
+                stepTimer.stop(span, batch.second.rows);
 
                 totalLoss += lossVal;
+                step++;
+
+                // estimate the validation accuracy on the subset
+                if (evalEvery > 0 && step % evalEvery == 0) {
+                    double subsetAcc = evaluator.accuracy(devsubset, sparse);
+                    System.out.printf("step: %6d\tdev-subset-accuracy: %3.4f\n", step, subsetAcc);
+                    if (subsetAcc <= peakAcc) {
+                        notAtPeak += 1;
+                    } else {
+                        notAtPeak = 0;
+                        peakAcc = subsetAcc;
+                    }
+                    if (notAtPeak == patience) {
+                        System.out.printf("not at peak %d times consecutively\n", notAtPeak);
+                        stop = true;
+                        break;
+                    }
+                }
             }
+            if (Metrics.isEnabled())
+                System.out.print(Metrics.report());
 
             // evaluate and print performance
-            double trainAcc = eval(net, traindata);
-            double valAcc = eval(net, devdata);
-            System.out.printf("epoch: %4d\tloss: %5.4f\ttrain-accuracy: %3.4f\tdev-accuracy: %3.4f\n", e, totalLoss, trainAcc, valAcc);
+            double valAcc = evaluator.accuracy(devdata, sparse);
+            System.out.printf("epoch: %4d\tloss: %5.4f\ttrain-accuracy: %3.4f\tdev-accuracy: %3.4f\n",
+                    e, totalLoss, trainAcc.getValue(), valAcc);
+
+            // check termination condition (with estimates, it is checked after each of them)
+            if (evalEvery > 0)
+                continue;
+            if (valAcc <= peakAcc) {
+                notAtPeak += 1;
+                System.out.printf("not at peak %d times consecutively\n", notAtPeak);
+            }
+            else {
+                notAtPeak = 0;
+                peakAcc = valAcc;
+            }
+            if (notAtPeak == patience)
+                break;
+        }
+        evaluator.shutdown();
+
+        System.out.println("\ntraining is finished");
+    }
+
+	/** 
+     * train an ANN for MNIST with asynchronous (Hogwild) SGD, see {@link HogwildTrainer}.
+     * The throughput (samples per second) of each epoch is printed.
+     * @param trainer a trainer for the ANN
+	 * @param net the ANN model being trained, for evaluation
+	 * @param traindata training dataset
+	 * @param devdata validation dataset, used for early stopping
+	 * @param nEpochs the maximum number of training epochs
+	 * @param patience the maximum number of consecutive epochs where validation performance is allowed to non-increased
+	 * @param sparse if true, the input features are fed to the network as sparse matrices
+    */
+    public static void trainHogwild(HogwildTrainer trainer, Layer net, MatrixDataset traindata,
+                                    MatrixDataset devdata, int nEpochs, int patience, boolean sparse) {
+		int notAtPeak = 0;  // the number of times not at peak
+		double peakAcc = -1;  // the best accuracy of the previous epochs
+        Evaluator evaluator = new Evaluator(net, Runtime.getRuntime().availableProcessors());
+
+        for (int e = 0; e < nEpochs; e++) {
+            double totalLoss = trainer.trainEpoch(traindata, sparse);
+
+            // evaluate and print performance (the training accuracy is accumulated by the trainer during the epoch)
+            double valAcc = evaluator.accuracy(devdata, sparse);
+            System.out.printf("epoch: %4d\tloss: %5.4f\ttrain-accuracy: %3.4f\tdev-accuracy: %3.4f\tsamples/sec: %.0f\n",
+                    e, totalLoss, trainer.getTrainingAccuracy(), valAcc, trainer.getSamplesPerSecond());
 
             // check termination condition
             if (valAcc <= peakAcc) {
@@ -136,14 +220,50 @@ public class MNISTClassifier {
             if (notAtPeak == patience)
                 break;
         }
+        evaluator.shutdown();
 
         System.out.println("\ntraining is finished");
     }
 
-    
+    /**
+     * Get the next mini-batch of a dataset, with dense or sparse (see {@link SparseMatrix}) input features.
+     */
+    static Pair<?, DoubleMatrix> nextBatch(MatrixDataset data, boolean sparse) {
+        if (sparse)
+            return data.getNextSparseMiniBatch();
+        return data.getNextMiniBatch();
+    }
+
+    /**
+     * Load an MNIST dataset. Binary files (*.bin, see {@link MNISTMappedDataset}) are memory-mapped,
+     * original IDX files (see {@link MNISTIdxDataset}) are read directly, other files are read as text.
+     */
+    public static MatrixDataset load(String path, int batchsize, boolean shuffle, Random rnd) throws IOException {
+        return load(path, batchsize, shuffle, rnd, false);
+    }
+
+    /**
+     * Load an MNIST dataset, see {@link #load(String, int, boolean, Random)}.
+     * @param uint8 if true, the pixels of a text file are stored as bytes (see {@link MNISTByteDataset})
+     */
+    public static MatrixDataset load(String path, int batchsize, boolean shuffle, Random rnd, boolean uint8)
+            throws IOException {
+        MatrixDataset data;
+        if (path.endsWith(".bin"))
+            data = new MNISTMappedDataset(batchsize, shuffle, rnd);
+        else if (path.contains("-idx"))
+            data = new MNISTIdxDataset(batchsize, shuffle, rnd);
+        else if (uint8)
+            data = new MNISTByteDataset(batchsize, shuffle, rnd);
+        else
+            data = new MNISTDataset(batchsize, shuffle, rnd);
+        data.fromFile(path);
+        return data;
+    }
+
     public static void main(String[] args) throws IOException {
         if (args.length < 4){
-            System.out.println("Usage: java MNISTClassifier <seed> <traindata> <devdata> <testdata>");
+            System.out.println("Usage: java MNISTClassifier <seed> <traindata> <devdata> <testdata> [nthreads]");
             return;
         }        
 
@@ -159,15 +279,42 @@ public class MNISTClassifier {
         int nEpochs = 100;
         int patience = 5;
         int hiddims = 500;
+        int nThreads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        int streamBuffer = 0;  // if > 0, the training set (one or more comma-separated text files) is streamed
+                               // from disk, with a shuffle buffer of streamBuffer samples (see MNISTStreamingDataset)
+        boolean uint8 = false;  // if true, the pixels are stored as bytes rather than doubles (see MNISTByteDataset)
+        int prefetch = 2;  // the number of training mini-batches prepared in the background
+        boolean singlePrecision = false;  // if true, matrix products are computed in float32
+        boolean sparse = false;  // if true, images are fed as sparse matrices (most pixels are 0)
+        boolean hogwild = false;  // if true, nThreads threads train asynchronously (see HogwildTrainer)
+        int evalEvery = 0;  // if > 0, the dev accuracy is estimated every evalEvery steps, on devSubsetSize instances
+        int devSubsetSize = 1000;
+        String modelPath = null;  // if not null, the trained network is saved there (see ModelFile)
+        int quantizeSamples = 0;  // if > 0, the trained network is quantized to int8, calibrated on quantizeSamples
+                                  // training instances, and compared with the float network on the test set (see Quantizer)
+        // per-layer timing etc. is recorded and printed after each epoch if metrics are on (-Dminet.metrics=true)
         
+        if (streamBuffer > 0 && hogwild) {
+            // the Hogwild threads take mini-batches by position, which a stream cannot do
+            System.out.println("Hogwild training (hogwild) cannot be used with a streamed training set (streamBuffer)");
+            return;
+        }
+
         // load datasets
         System.out.println("\nLoading data...");
-        MNISTDataset trainset = new MNISTDataset(batchsize, true, rnd); 
-        trainset.fromFile(args[1]);
-        MNISTDataset devset = new MNISTDataset(batchsize, false, rnd); 
-        devset.fromFile(args[2]);
-        MNISTDataset testset = new MNISTDataset(batchsize, false, rnd); 
-        testset.fromFile(args[3]);
+        MatrixDataset trainset;
+        if (streamBuffer > 0) {
+            trainset = new MNISTStreamingDataset(batchsize, true, rnd, streamBuffer);
+            for (String path : args[1].split(",")) {
+                trainset.fromFile(path);
+            }
+        } else {
+            trainset = load(args[1], batchsize, true, rnd, uint8);
+        }
+        MatrixDataset devset = load(args[2], batchsize, false, rnd, uint8);
+        MatrixDataset testset = load(args[3], batchsize, false, rnd, uint8);
+        if (prefetch > 0)
+            trainset = new PrefetchDataset(trainset, prefetch, sparse);
 
         System.out.printf("train: %d instances\n", trainset.getSize());
         System.out.printf("dev: %d instances\n", devset.getSize());
@@ -177,21 +324,54 @@ public class MNISTClassifier {
         System.out.println("\nCreating network...");
         int indims = trainset.getInputDims();
         int outdims = 10;
+        // the same as Linear, ReLU, Linear, Softmax with CrossEntropy loss,
+        // but the ReLU is fused with the first linear layer, and the softmax with the loss
         Sequential net = new Sequential(new Layer[] {
-                new Linear(indims, hiddims, new WeightInitXavier()),
-                new ReLU(),
-                new Linear(hiddims, outdims, new WeightInitXavier()),
-                new Softmax()});
-        CrossEntropy loss = new CrossEntropy();
-        Optimizer sgd = new SGD(net, learningRate);
-        System.out.println(net);
-
-        // train network
-        System.out.println("\nTraining...");
-        train(net, loss, sgd, trainset, devset, nEpochs, patience);
+                new LinearReLU(indims, hiddims, new WeightInitXavier()),
+                new Linear(hiddims, outdims, new WeightInitXavier())});
+        net.setSinglePrecision(singlePrecision);
+        SoftmaxCrossEntropy loss = new SoftmaxCrossEntropy();
+
+        if (hogwild) {
+            // each thread trains its own replica of the network on its own mini-batches, without synchronization
+            HogwildTrainer trainer = new HogwildTrainer(net, loss, learningRate, nThreads);
+            System.out.println(trainer);
+            System.out.println("\nTraining...");
+            trainHogwild(trainer, net, trainset, devset, nEpochs, patience, sparse);
+            trainer.shutdown();
+        } else {
+            // split each mini-batch over several threads, each of which has a replica of the network
+            Layer model = net;
+            if (Metrics.isEnabled())
+                model = new InstrumentedSequential(net);
+            if (nThreads > 1)
+                model = new DataParallel(model, nThreads);
+
+            // other optimizers: e.g. new SGD(model, learningRate, 0.9, true) (Nesterov momentum), new Adam(model, 0.001)
+            Optimizer sgd = new SGD(model, learningRate);
+            if (Metrics.isEnabled())
+                sgd = new InstrumentedOptimizer(sgd);
+            System.out.println(model);
+
+            // train network
+            System.out.println("\nTraining...");
+            MatrixDataset devsubset = evalEvery > 0 ? SubsetDataset.random(devset, devSubsetSize, rnd) : null;
+            train(model, loss, sgd, trainset, devset, nEpochs, patience, sparse, evalEvery, devsubset);
+            if (model instanceof DataParallel)
+                ((DataParallel)model).shutdown();
+        }
 
         // perform on test set
-        double testAcc = eval(net, testset);
+        double testAcc = eval(net, testset, sparse);
         System.out.printf("\nTest accuracy: %.4f\n", testAcc);
+
+        if (quantizeSamples > 0) {
+            Sequential qnet = Quantizer.quantize(net, trainset, sparse, quantizeSamples);
+            System.out.println("\nQuantized network: " + qnet);
+            System.out.println(Quantizer.compare(net, qnet, testset, sparse));
+        }
+
+        if (modelPath != null)
+            ModelFile.save(net, modelPath);
     }
 }
@@ -0,0 +1,57 @@
+package minet.example.mnist;
+
+import java.io.IOException;
+import java.util.Random;
+
+import minet.data.ByteArrayDataset;
+import minet.data.IdxFile;
+
+
+/**
+ * MNIST dataset read from the original IDX files (e.g. train-images-idx3-ubyte and train-labels-idx1-ubyte,
+ * plain or gzipped), without conversion. The pixels are kept as bytes (see {@link ByteArrayDataset})
+ * and scaled to [0, 1] when mini-batches are assembled.
+ */
+public class MNISTIdxDataset extends ByteArrayDataset {
+
+    private static final long serialVersionUID = 7834183830290292800L;
+
+    public MNISTIdxDataset(int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+    }
+
+    /**
+     * Load MNIST data from an image file, and the label file of the same name
+     * (with "images-idx3" replaced by "labels-idx1"), or from "imagefile,labelfile".
+     */
+    @Override
+    public void fromFile(String path) throws IOException {
+        String[] paths = path.split(",");
+        if (paths.length == 2)
+            fromFiles(paths[0], paths[1]);
+        else if (path.contains("images-idx3"))
+            fromFiles(path, path.replace("images-idx3", "labels-idx1"));
+        else
+            throw new IOException("cannot find the label file of " + path + ", use \"imagefile,labelfile\"");
+    }
+
+    /**
+     * Load MNIST data from an image file and a label file.
+     */
+    public void fromFiles(String imagePath, String labelPath) throws IOException {
+        IdxFile images = IdxFile.read(imagePath);
+        IdxFile labelFile = IdxFile.read(labelPath);
+        if (images.dims.length < 2 || labelFile.dims.length != 1 || images.dims[0] != labelFile.dims[0])
+            throw new IOException(imagePath + " and " + labelPath + " do not match");
+
+        inputDims = images.getItemSize();
+        features = images.data;
+        labels = new int[labelFile.dims[0]];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labelFile.data[i] & 0xFF;
+        }
+
+        // pixel / 255, as in the text files
+        setUnitGrid(inputDims);
+    }
+}
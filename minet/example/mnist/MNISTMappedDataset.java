@@ -0,0 +1,202 @@
+package minet.example.mnist;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.jblas.DoubleMatrix;
+
+import minet.data.MatrixDataset;
+import minet.util.SparseMatrix;
+
+
+/**
+ * MNIST dataset stored in a binary file, which is memory-mapped rather than read into the heap.
+ * Loading is therefore almost instant, and processes reading the same file share its pages.
+ * A binary file is created once from a text file (see {@link MNISTDataset#fromFile(String)})
+ * by {@link #convert(String, String)}, e.g.
+ * <pre>
+ * java minet.example.mnist.MNISTMappedDataset train.txt train.bin
+ * </pre>
+ * Binary format (little-endian):
+ * <pre>
+ * header:   [magic (int)] [version (int)] [number of samples n (int)] [xDims (int)]
+ * features: n * xDims doubles, sample after sample
+ * labels:   n ints
+ * </pre>
+ */
+public class MNISTMappedDataset extends MatrixDataset {
+
+    private static final long serialVersionUID = 9011539470921361211L;
+
+    static final int MAGIC = 0x4D4E4554;  // "MNET"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    transient DoubleBuffer[] chunks;  // the mapped feature block, split into chunks of whole samples
+    int samplesPerChunk;              // number of samples in each chunk
+    int[] labels;                     // the labels of all samples
+    int inputDims;                    // number of input features
+
+    public MNISTMappedDataset(int batchsize, boolean shuffle, Random rnd) {
+        super(batchsize, shuffle, rnd);
+    }
+
+    /**
+     * Map MNIST data from a binary file.
+     */
+    @Override
+    public void fromFile(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        FileChannel channel = file.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) { }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+                throw new IOException(path + " is not an MNIST binary file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("unsupported MNIST binary file version " + version);
+            int size = header.getInt();
+            int dims = header.getInt();
+            if (size < 0 || dims < 0)
+                throw new IOException(String.format("%s: invalid header (%d samples, %d features)", path, size, dims));
+
+            // the labels and then the features must fit in the file (divisions, so that nothing overflows)
+            long rowBytes = (long)dims * Double.BYTES;
+            long available = channel.size() - HEADER_BYTES - (long)size * Integer.BYTES;
+            if (available < 0 || (rowBytes > 0 && size > available / rowBytes))
+                throw new IOException(path + " is truncated");
+            inputDims = dims;
+            long labelPos = HEADER_BYTES + size * rowBytes;
+
+            // a mapped buffer cannot exceed 2GB, so the feature block is mapped in chunks of whole samples
+            samplesPerChunk = (int)Math.max(1, Math.min(size, Integer.MAX_VALUE / Math.max(rowBytes, 1)));
+            int nChunks = (size + samplesPerChunk - 1) / samplesPerChunk;
+            chunks = new DoubleBuffer[nChunks];
+            for (int c = 0; c < nChunks; c++) {
+                int n = Math.min(samplesPerChunk, size - c * samplesPerChunk);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + c * samplesPerChunk * rowBytes, n * rowBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+
+            IntBuffer labelBuf = channel.map(FileChannel.MapMode.READ_ONLY, labelPos, (long)size * Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            labels = new int[size];
+            labelBuf.get(labels);
+        } finally {
+            // the mappings remain valid after the channel is closed
+            file.close();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return labels.length;
+    }
+
+    @Override
+    public int getInputDims() {
+        return inputDims;
+    }
+
+    @Override
+    protected void copyInput(int index, DoubleMatrix X, int row) {
+        DoubleBuffer chunk = chunks[index / samplesPerChunk];
+        int offset = (index % samplesPerChunk) * inputDims;
+        double[] x = X.data;
+        int rows = X.rows;
+        for (int j = 0; j < inputDims; j++) {
+            x[row + j * rows] = chunk.get(offset + j);
+        }
+    }
+
+    @Override
+    protected void copyInputSparse(int index, SparseMatrix X) {
+        DoubleBuffer chunk = chunks[index / samplesPerChunk];
+        int offset = (index % samplesPerChunk) * inputDims;
+        for (int j = 0; j < inputDims; j++) {
+            double v = chunk.get(offset + j);
+            if (v != 0)
+                X.add(j, v);
+        }
+        X.endRow();
+    }
+
+    @Override
+    protected int getLabel(int index) {
+        return labels[index];
+    }
+
+    /**
+     * Convert an MNIST text file (see {@link MNISTDataset#fromFile(String)}) to a binary file.
+     * @param textPath path to the text file
+     * @param binPath path to the binary file to be created
+     */
+    public static void convert(String textPath, String binPath) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(textPath));
+        RandomAccessFile file = new RandomAccessFile(binPath, "rw");
+        FileChannel channel = file.getChannel();
+        try {
+            file.setLength(0);
+
+            // first line
+            String[] ss = br.readLine().split(" ");
+            int size = Integer.valueOf(ss[0]);
+            int dims = Integer.valueOf(ss[1]);
+
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(HEADER_BYTES, dims * Double.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(dims);
+            writeFully(channel, buf);
+
+            // features are written sample after sample, labels are written at the end
+            int[] ys = new int[size];
+            for (int i = 0; i < size; i++) {
+                ss = br.readLine().split(" ; ");
+                String[] sx = ss[0].split(" ");
+                ys[i] = Integer.valueOf(ss[1]);
+                for (int j = 0; j < dims; j++) {
+                    buf.putDouble(j < sx.length ? Double.parseDouble(sx[j]) : 0);
+                }
+                writeFully(channel, buf);
+            }
+
+            ByteBuffer labelBuf = ByteBuffer.allocate(size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            labelBuf.asIntBuffer().put(ys);
+            labelBuf.position(labelBuf.capacity());
+            writeFully(channel, labelBuf);
+        } finally {
+            br.close();
+            file.close();
+        }
+    }
+
+    /**
+     * Write the content of a (filled) buffer to a channel and clear the buffer.
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java MNISTMappedDataset <textfile> <binfile>");
+            return;
+        }
+        convert(args[0], args[1]);
+    }
+}
@@ -0,0 +1,71 @@
+package minet.example.mnist;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import minet.data.StreamingDataset;
+
+
+/**
+ * MNIST dataset streamed from one or more text files (in the format of {@link MNISTDataset#fromFile(String)}),
+ * for training sets which do not fit in memory (see {@link StreamingDataset}).
+ */
+public class MNISTStreamingDataset extends StreamingDataset {
+
+    private static final long serialVersionUID = 115285210647542093L;
+
+    public MNISTStreamingDataset(int batchsize, boolean shuffle, Random rnd, int bufferSize) {
+        super(batchsize, shuffle, rnd, bufferSize);
+    }
+
+    @Override
+    protected SampleReader open(String path) throws IOException {
+        final BufferedReader br = new BufferedReader(new FileReader(path), 1 << 16);
+
+        // first line: [number of samples] [xDims]
+        String line = br.readLine();
+        if (line == null) {
+            br.close();
+            throw new IOException(path + " is empty");
+        }
+        String[] ss = line.trim().split(" ");
+        final int size = Integer.valueOf(ss[0]);
+        final int dims = Integer.valueOf(ss[1]);
+
+        return new SampleReader() {
+            int read = 0;
+
+            @Override
+            public int getSize() {
+                return size;
+            }
+
+            @Override
+            public int getInputDims() {
+                return dims;
+            }
+
+            @Override
+            public int next(double[] x, int offset) throws IOException {
+                String line = read < size ? br.readLine() : null;
+                if (line == null)
+                    return -1;
+                read++;
+                // [input features (separated by spaces)] ; [label]
+                String[] ss = line.split(" ; ");
+                String[] sx = ss[0].split(" ");
+                for (int j = 0; j < dims; j++) {
+                    x[offset + j] = j < sx.length ? Double.parseDouble(sx[j]) : 0;
+                }
+                return Integer.valueOf(ss[1].trim());
+            }
+
+            @Override
+            public void close() throws IOException {
+                br.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,316 @@
+// File: DataParallel.java
+// DataParallel container
+package minet.layer;
+
+import org.jblas.DoubleMatrix;
+
+import minet.backend.Backend;
+import minet.backend.Backends;
+import minet.util.RowSet;
+import minet.util.SparseMatrix;
+import minet.util.Workspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A container for data-parallel training of a layer (typically a {@link Sequential}).
+ * Each mini-batch is split row-wise into shards, one per worker thread.
+ * Each worker runs forward and backward on its own replica of the layer
+ * (see {@link Layer#replicate()}), which shares the weights with the original layer.
+ * After backward, the gradients of all replicas are summed into the gradients of the original layer,
+ * so that an optimizer (e.g. {@link minet.optim.SGD}) sees the gradients of the whole mini-batch.
+ * The result is the same as single-threaded training, up to floating-point summation order.
+ *
+ * For example:
+ * <pre>
+ * Sequential net = new Sequential(...);
+ * DataParallel model = new DataParallel(net, 8);
+ * Optimizer sgd = new SGD(model, 0.1);
+ * // use model.forward and model.backward as for net
+ * </pre>
+ * @author Phong Le
+ */
+public class DataParallel implements Layer {
+
+    Layer[] replicas;                        // replicas[0] is the original layer
+    List<List<DoubleMatrix>> replicaGrads;   // gradients of each replica
+    List<List<RowSet>> replicaRows;          // the rows of these gradients which may be non-zero
+    ExecutorService pool;
+
+    int[] offsets;  // offsets[s] is the first row of shard s in the current mini-batch
+    int nShards;    // the number of shards of the current mini-batch
+
+    // tasks run by the worker threads, created once
+    List<Callable<DoubleMatrix>> forwardTasks;
+    List<Callable<DoubleMatrix>> backwardTasks;
+    List<Callable<DoubleMatrix>> reduceTasks;
+
+    // input and output of the current call, and workspaces
+    Object X;  // a DoubleMatrix, or a SparseMatrix
+    DoubleMatrix gY, Y, gX;
+    DoubleMatrix[] shardX, shardGY;
+    SparseMatrix[] shardXs;
+
+    /**
+     * Constructor for DataParallel
+     * @param net the layer to be trained
+     * @param nThreads the number of worker threads (and replicas)
+     */
+    public DataParallel(Layer net, int nThreads) {
+        if (nThreads < 1)
+            throw new IllegalArgumentException("nThreads must be positive");
+
+        this.replicas = new Layer[nThreads];
+        this.replicaGrads = new ArrayList<List<DoubleMatrix>>(nThreads);
+        this.replicaRows = new ArrayList<List<RowSet>>(nThreads);
+        this.replicas[0] = net;
+        this.replicaGrads.add(net.getAllGradients(new ArrayList<DoubleMatrix>()));
+        this.replicaRows.add(net.getAllGradientRows(new ArrayList<RowSet>()));
+        for (int s = 1; s < nThreads; s++) {
+            this.replicas[s] = net.replicate();
+            this.replicaGrads.add(this.replicas[s].getAllGradients(new ArrayList<DoubleMatrix>()));
+            this.replicaRows.add(this.replicas[s].getAllGradientRows(new ArrayList<RowSet>()));
+        }
+
+        this.offsets = new int[nThreads + 1];
+        this.shardX = new DoubleMatrix[nThreads];
+        this.shardGY = new DoubleMatrix[nThreads];
+        this.shardXs = new SparseMatrix[nThreads];
+        createTasks();
+
+        this.pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "minet-data-parallel");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Get the number of worker threads.
+     * @return the number of worker threads
+     */
+    public int getNumThreads() {
+        return replicas.length;
+    }
+
+    /**
+     * Get the layer being trained (whose replicas are run by the worker threads).
+     * @return the layer given to the constructor
+     */
+    public Layer getNetwork() {
+        return replicas[0];
+    }
+
+    @Override
+    public DoubleMatrix forward(Object input) {
+        X = input;
+        int rows = X instanceof SparseMatrix ? ((SparseMatrix)X).rows : ((DoubleMatrix)X).rows;
+
+        // split X row-wise into (at most) one shard per replica
+        nShards = Math.min(replicas.length, Math.max(rows, 1));
+        for (int s = 0; s <= nShards; s++) {
+            offsets[s] = (int)((long)rows * s / nShards);
+        }
+
+        List<DoubleMatrix> outputs = invokeAll(forwardTasks.subList(0, nShards));
+        Y = Workspace.get(Y, rows, outputs.get(0).columns);
+        return concatRows(outputs, Y);
+    }
+
+    @Override
+    public DoubleMatrix backward(DoubleMatrix gY) {
+        this.gY = gY;
+
+        // backward on each shard
+        List<DoubleMatrix> gXs = invokeAll(backwardTasks.subList(0, nShards));
+        if (gXs.get(0) == null) {
+            // no gradient wrt the input (e.g. a sparse input)
+            gX = null;
+        } else {
+            gX = Workspace.get(gX, gY.rows, gXs.get(0).columns);
+            concatRows(gXs, gX);
+        }
+
+        // sum the gradients of the replicas into those of the original layer
+        invokeAll(reduceTasks);
+        return gX;
+    }
+
+    /**
+     * Create the tasks of the worker threads: for each shard, forward and backward on the shard's replica;
+     * for each gradient, summing the gradients of all the replicas.
+     */
+    void createTasks() {
+        forwardTasks = new ArrayList<Callable<DoubleMatrix>>();
+        backwardTasks = new ArrayList<Callable<DoubleMatrix>>();
+        for (int s = 0; s < replicas.length; s++) {
+            final int shard = s;
+            forwardTasks.add(new Callable<DoubleMatrix>() {
+                @Override
+                public DoubleMatrix call() {
+                    if (X instanceof SparseMatrix) {
+                        shardXs[shard] = ((SparseMatrix)X).getRows(offsets[shard], offsets[shard + 1], shardXs[shard]);
+                        return replicas[shard].forward(shardXs[shard]);
+                    }
+                    shardX[shard] = getRows((DoubleMatrix)X, offsets[shard], offsets[shard + 1], shardX[shard]);
+                    return replicas[shard].forward(shardX[shard]);
+                }
+            });
+            backwardTasks.add(new Callable<DoubleMatrix>() {
+                @Override
+                public DoubleMatrix call() {
+                    // the gradients of the original layer are reset by the optimizer,
+                    // those of the other replicas are reset here
+                    if (shard > 0) {
+                        for (DoubleMatrix g : replicaGrads.get(shard)) {
+                            g.fill(0);
+                        }
+                        for (RowSet rows : replicaRows.get(shard)) {
+                            if (rows != null)
+                                rows.clear();
+                        }
+                    }
+                    shardGY[shard] = getRows(gY, offsets[shard], offsets[shard + 1], shardGY[shard]);
+                    return replicas[shard].backward(shardGY[shard]);
+                }
+            });
+        }
+
+        reduceTasks = new ArrayList<Callable<DoubleMatrix>>();
+        final List<DoubleMatrix> grads = replicaGrads.get(0);
+        for (int k = 0; k < grads.size(); k++) {
+            final int index = k;
+            reduceTasks.add(new Callable<DoubleMatrix>() {
+                @Override
+                public DoubleMatrix call() {
+                    DoubleMatrix g = grads.get(index);
+                    RowSet rows = replicaRows.get(0).get(index);
+                    Backend backend = Backends.get();
+                    for (int s = 1; s < nShards; s++) {
+                        backend.axpy(1, replicaGrads.get(s).get(index), g);
+                        if (rows != null)
+                            rows.addAll(replicaRows.get(s).get(index));
+                    }
+                    return g;
+                }
+            });
+        }
+    }
+
+    @Override
+    public List<DoubleMatrix> getAllWeights(List<DoubleMatrix> weights) {
+        return replicas[0].getAllWeights(weights);
+    }
+
+    @Override
+    public List<DoubleMatrix> getAllGradients(List<DoubleMatrix> grads) {
+        return replicas[0].getAllGradients(grads);
+    }
+
+    /**
+     * The row sets of the original layer, to which backward adds the rows written by the other replicas.
+     */
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return replicas[0].getAllGradientRows(rows);
+    }
+
+    @Override
+    public Layer replicate() {
+        return new DataParallel(replicas[0].replicate(), replicas.length);
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        for (Layer replica : replicas) {
+            replica.setTraining(training);
+        }
+    }
+
+    @Override
+    public boolean isTraining() {
+        return replicas[0].isTraining();
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        for (Layer replica : replicas) {
+            replica.releaseWorkspaces();
+        }
+        X = null;
+        gY = Y = gX = null;
+        for (int s = 0; s < replicas.length; s++) {
+            shardX[s] = shardGY[s] = null;
+            shardXs[s] = null;
+        }
+    }
+
+    /**
+     * Stop the worker threads. The container must not be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DataParallel: %d threads\n", replicas.length) + replicas[0].toString();
+    }
+
+    /**
+     * Run the tasks on the worker threads and wait for their results.
+     */
+    List<DoubleMatrix> invokeAll(List<Callable<DoubleMatrix>> tasks) {
+        List<DoubleMatrix> results = new ArrayList<DoubleMatrix>(tasks.size());
+        try {
+            for (Future<DoubleMatrix> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Copy rows [start, end) of a matrix.
+     * @param R the matrix to be filled (reallocated if it doesn't have the right shape)
+     */
+    static DoubleMatrix getRows(DoubleMatrix X, int start, int end, DoubleMatrix R) {
+        int n = end - start;
+        R = Workspace.get(R, n, X.columns);
+        // jblas matrices are column-major, so each column is a contiguous block
+        for (int j = 0; j < X.columns; j++) {
+            System.arraycopy(X.data, j * X.rows + start, R.data, j * n, n);
+        }
+        return R;
+    }
+
+    /**
+     * Stack matrices (having the same number of columns) vertically.
+     * @param R the result, having as many rows as all the parts together
+     */
+    static DoubleMatrix concatRows(List<DoubleMatrix> parts, DoubleMatrix R) {
+        int start = 0;
+        for (DoubleMatrix P : parts) {
+            for (int j = 0; j < P.columns; j++) {
+                System.arraycopy(P.data, j * P.rows, R.data, j * R.rows + start, P.rows);
+            }
+            start += P.rows;
+        }
+        return R;
+    }
+}
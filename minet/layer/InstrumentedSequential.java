@@ -0,0 +1,89 @@
+// File: InstrumentedSequential.java
+// InstrumentedSequential class
+package minet.layer;
+
+import org.jblas.DoubleMatrix;
+
+import minet.metrics.Metrics;
+import minet.metrics.Timer;
+
+/**
+ * A sequential container recording the wall time, the allocated bytes and the number of samples
+ * of the forward and backward passes of each of its layers, in the timers
+ * {@code "<name>.<i> <layer class> forward"} and {@code "<name>.<i> <layer class> backward"} (see {@link Metrics}).
+ * It is a view of a {@link Sequential}: the two containers share their layers, so the original one can still be used,
+ * e.g. for evaluation without instrumentation.
+ * When metrics are off, the only overhead is checking {@link Metrics#isEnabled()} once per layer.
+ *
+ * Replicas (see {@link #replicate()}) record in the same timers, so that the timers of a {@link DataParallel}
+ * network sum over the threads.
+ *
+ * @author Phong Le
+ */
+public class InstrumentedSequential extends Sequential {
+
+    private static final long serialVersionUID = 4915537017372463920L;
+
+    String name;
+    transient Timer[] timers;  // forward and backward timers of each layer, created when first needed
+
+    /**
+     * @param net the network to be instrumented
+     */
+    public InstrumentedSequential(Sequential net) {
+        this(net, "net");
+    }
+
+    /**
+     * @param net the network to be instrumented
+     * @param name the prefix of the names of the timers
+     */
+    public InstrumentedSequential(Sequential net, String name) {
+        super(net.layers);
+        this.evalMode = net.evalMode;
+        this.segmentLength = net.segmentLength;
+        this.name = name;
+    }
+
+    Timer[] timers() {
+        if (timers == null) {
+            Timer[] t = new Timer[2 * layers.length];
+            for (int i = 0; i < layers.length; i++) {
+                String layer = String.format("%s.%d %s", name, i, layers[i].getClass().getSimpleName());
+                t[2 * i] = Metrics.timer(layer + " forward");
+                t[2 * i + 1] = Metrics.timer(layer + " backward");
+            }
+            timers = t;
+        }
+        return timers;
+    }
+
+    @Override
+    protected DoubleMatrix forwardLayer(int i, Object X) {
+        if (!Metrics.isEnabled())
+            return super.forwardLayer(i, X);
+        Timer timer = timers()[2 * i];
+        Timer.Span span = timer.start();
+        DoubleMatrix Y = super.forwardLayer(i, X);
+        timer.stop(span, Y.rows);
+        return Y;
+    }
+
+    @Override
+    protected DoubleMatrix backwardLayer(int i, DoubleMatrix dY) {
+        if (!Metrics.isEnabled())
+            return super.backwardLayer(i, dY);
+        Timer timer = timers()[2 * i + 1];
+        Timer.Span span = timer.start();
+        DoubleMatrix dX = super.backwardLayer(i, dY);
+        timer.stop(span, dY.rows);
+        return dX;
+    }
+
+    @Override
+    public Layer replicate() {
+        InstrumentedSequential replica = new InstrumentedSequential((Sequential)super.replicate(), name);
+        replica.timers = timers;
+        return replica;
+    }
+}
@@ -6,8 +6,13 @@ import org.jblas.*;
 
 import java.util.List;
 
+import minet.util.RowSet;
+
 /**
  * An interface for all layers.
+ * Layers reuse their output matrices (and the matrices returned by backward) from one call to the next,
+ * so a returned matrix must be copied ({@code dup()}) if it is needed after the next call.
+ * Also, the input given to forward must not be modified before backward is called.
  *
  * @author Phong Le
  */
@@ -44,4 +49,41 @@ public interface Layer {
      */
     public List<DoubleMatrix> getAllGradients(List<DoubleMatrix> grads);
 
+    /**
+     * Collect, for each gradient of {@link #getAllGradients(List)} (in the same order), the set of its rows
+     * which may be non-zero, or null if any row may be non-zero. The layer adds rows to a set when backward
+     * writes them; whoever sets the gradient to 0 (i.e. the optimizer) clears the set,
+     * and may then only visit the rows of the set (e.g. after a backward on a sparse input).
+     * @param rows a list of row sets (updated accordingly)
+     * @return the same list.
+     */
+    public List<RowSet> getAllGradientRows(List<RowSet> rows);
+
+    /**
+     * Create a replica of the layer, e.g. for data-parallel training (see {@link DataParallel}).
+     * The replica shares the weight matrices and bias vectors with this layer,
+     * but has its own gradients and its own storage for backward.
+     * @return a new layer
+     */
+    public Layer replicate();
+
+    /**
+     * Switch between training mode (the default) and evaluation mode.
+     * In evaluation mode, nothing is stored for backward, and backward must not be called.
+     * @param training true for training mode, false for evaluation mode
+     */
+    public void setTraining(boolean training);
+
+    /**
+     * @return true in training mode, false in evaluation mode (see {@link #setTraining(boolean)})
+     */
+    public boolean isTraining();
+
+    /**
+     * Drop the matrices stored for backward and the workspaces, so that their memory can be reclaimed
+     * (they are allocated again by the next forward and backward). The weights and gradients are kept.
+     * This is used e.g. by activation checkpointing (see {@link Sequential#setCheckpointing(int)}).
+     */
+    public void releaseWorkspaces();
+
 }
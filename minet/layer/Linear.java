@@ -5,10 +5,19 @@ package minet.layer;
 import org.jblas.*;
 
 import java.util.List;
+import minet.backend.Backend;
+import minet.backend.Backends;
 import minet.layer.init.*;
+import minet.util.RowSet;
+import minet.util.SparseMatrix;
+import minet.util.Workspace;
 
 /**
  * A class for linear layers (Y = XW + b)
+ * The input X is either a DoubleMatrix or, for sparse inputs (e.g. bag-of-features vectors),
+ * a {@link SparseMatrix}, in which case forward and backward only touch the rows of W of non-zero features.
+ * A Linear layer taking sparse inputs must be the first layer of a network, since backward does not
+ * compute the gradient wrt a sparse input (it returns null).
  *
  * @author Phong Le
  */
@@ -21,40 +30,170 @@ public class Linear implements Layer, java.io.Serializable {
 
     // for backward
     DoubleMatrix X;   // store input X for computing backward
+    SparseMatrix Xs;  // or the input, if it is sparse
     DoubleMatrix gW;  // gradient of W
+    transient RowSet gWRows, gbRows;  // the rows of gW and gb which may be non-zero (see getAllGradientRows)
     DoubleMatrix gb;  // gradient of b
 
+    boolean evalMode;  // if true, X is not stored (see setTraining)
+
+    // workspaces, reused from mini-batch to mini-batch
+    transient DoubleMatrix Y;   // output
+    transient DoubleMatrix gX;  // gradient of X
+
+    // if true, the matrix products are computed in single precision (see setSinglePrecision)
+    boolean singlePrecision;
+    transient FloatMatrix Wf, Xf, Yf, gYf, gWf, gXf;  // single-precision workspaces
+    transient boolean WfKept;  // if true, Wf is kept from forward to forward (in evaluation mode, see multiply)
+
     public Linear(int indims, int outdims, WeightInit wInit) {
         this.W = wInit.generate(indims, outdims);
         this.b = DoubleMatrix.zeros(outdims);
         this.gW = DoubleMatrix.zeros(indims, outdims);
         this.gb = DoubleMatrix.zeros(outdims);
+        this.gWRows = new RowSet(indims);
+        this.gbRows = new RowSet(outdims);
     }
 
     public Linear(DoubleMatrix W, DoubleMatrix b) {
         this.W = W;
         this.b = b;
+        this.gW = DoubleMatrix.zeros(W.rows, W.columns);
+        this.gb = DoubleMatrix.zeros(b.length);
+        this.gWRows = new RowSet(W.rows);
+        this.gbRows = new RowSet(gb.rows);
     }
 
     @Override
     public DoubleMatrix forward(Object input) {
-        DoubleMatrix X = (DoubleMatrix)input;
         // Y = X * W + b
-        DoubleMatrix Y = X.mmul(W).addiRowVector(b);
-        this.X = X.dup();
+        DoubleMatrix Y = multiply(input);
+        Backends.get().addRowVector(Y, b, Y);
+        return Y;
+    }
+
+    /**
+     * Compute X * W (without the bias) into the output workspace, and store X for backward.
+     * Subclasses fusing an activation function with this layer apply the bias and the activation
+     * to the result in a single sweep.
+     * @param input a [minibatch_size x input_dims] matrix, dense (DoubleMatrix) or sparse (SparseMatrix)
+     * @return the output workspace Y = X * W
+     */
+    DoubleMatrix multiply(Object input) {
+        if (input instanceof SparseMatrix) {
+            // sparse inputs are multiplied in double precision, touching only the rows of W of non-zero features
+            SparseMatrix Xs = (SparseMatrix)input;
+            Y = Workspace.get(Y, Xs.rows, W.columns);
+            Backends.get().spmm(Xs, W, Y);
+            this.X = null;
+            this.Xs = evalMode ? null : Xs;
+            return Y;
+        }
+
+        DoubleMatrix X = (DoubleMatrix)input;
+        if (singlePrecision) {
+            // in training mode, W may have been updated by the optimizer since the last call;
+            // in evaluation mode, it is converted by the first call only
+            if (Wf == null || !WfKept) {
+                Wf = Workspace.toFloat(W, Wf);
+                WfKept = evalMode;
+            }
+            Xf = Workspace.toFloat(X, Xf);
+            Yf = Workspace.get(Yf, X.rows, W.columns);
+            Backends.get().gemm(false, false, 1.0f, Xf, Wf, 0.0f, Yf);
+            Y = Workspace.toDouble(Yf, Y);
+        } else {
+            Y = Workspace.get(Y, X.rows, W.columns);
+            Backends.get().gemm(false, false, 1.0, X, W, 0.0, Y);
+        }
+        this.X = evalMode ? null : X;  // X is not modified before backward, no need to copy it
+        this.Xs = null;
         return Y;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix gY) {
-        // gW = X^T * gY
-        gW.addi(X.transpose().mmul(gY));
+        if (evalMode)
+            throw new IllegalStateException("backward is not allowed in evaluation mode");
+
+        if (Xs != null)
+            return backwardSparse(gY);
+        if (singlePrecision)
+            return backwardSingle(gY);
+
+        Backend backend = Backends.get();
+
+        // gW = X^T * gY (accumulated into gW, without building X^T)
+        backend.gemm(true, false, 1.0, X, gY, 1.0, gW);
+        addGradientRows(null);
 
         // gb = sum_row gY
-        gb.addi(gY.columnSums());
+        backend.addColumnSums(gY, gb);
 
         // gX = gY * W^T
-        return gY.mmul(W.transpose());
+        gX = Workspace.get(gX, gY.rows, W.rows);
+        backend.gemm(false, true, 1.0, gY, W, 0.0, gX);
+        return gX;
+    }
+
+    /**
+     * Backward for a sparse input: gW is only updated at the rows of the input's non-zero features,
+     * which are added to the rows of gW to be visited by the optimizer (see {@link #getAllGradientRows(List)}).
+     * A sparse input is data rather than the output of another layer, so its gradient is not computed.
+     * @return null
+     */
+    DoubleMatrix backwardSparse(DoubleMatrix gY) {
+        Backend backend = Backends.get();
+
+        // gW += X^T * gY
+        backend.spmmTransA(Xs, gY, gW);
+        addGradientRows(Xs);
+
+        // gb = sum_row gY
+        backend.addColumnSums(gY, gb);
+        return null;
+    }
+
+    /**
+     * Backward with the matrix products in single precision (the gradients are kept in double precision).
+     */
+    DoubleMatrix backwardSingle(DoubleMatrix gY) {
+        Backend backend = Backends.get();
+        gYf = Workspace.toFloat(gY, gYf);
+
+        // gW += X^T * gY
+        gWf = Workspace.get(gWf, W.rows, W.columns);
+        backend.gemm(true, false, 1.0f, Xf, gYf, 0.0f, gWf);
+        for (int i = 0; i < gW.length; i++) {
+            gW.data[i] += gWf.data[i];
+        }
+        addGradientRows(null);
+
+        // gb = sum_row gY
+        backend.addColumnSums(gY, gb);
+
+        // gX = gY * W^T
+        gXf = Workspace.get(gXf, gY.rows, W.rows);
+        backend.gemm(false, true, 1.0f, gYf, Wf, 0.0f, gXf);
+        gX = Workspace.toDouble(gXf, gX);
+        return gX;
+    }
+
+    /**
+     * Compute the matrix products of forward and backward in single precision (float32) or not.
+     * Weights, gradients and the input/output of the layer stay in double precision,
+     * so that the rest of the network, the loss and the optimizer are unchanged,
+     * but the products (which dominate the computation) run at single-precision speed.
+     * In training mode, W is converted to single precision by every forward; in evaluation mode, by the first
+     * forward only, the copy being kept until the mode is set again (see {@link #setTraining(boolean)}),
+     * so weights modified in evaluation mode are seen after a call to setTraining.
+     * @param singlePrecision true for single precision, false for double precision (the default)
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+        if (!singlePrecision) {
+            Wf = Xf = Yf = gYf = gWf = gXf = null;
+        }
     }
 
     @Override
@@ -71,6 +210,66 @@ public class Linear implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        initGradientRows();
+        rows.add(gWRows);
+        rows.add(gbRows);
+        return rows;
+    }
+
+    /**
+     * Create the row sets of the gradients after deserialization (they are not stored), with all the rows
+     * since the gradients may be non-zero anywhere.
+     */
+    void initGradientRows() {
+        if (gWRows == null) {
+            gWRows = new RowSet(gW.rows);
+            gWRows.addAll();
+            gbRows = new RowSet(gb.rows);
+            gbRows.addAll();
+        }
+    }
+
+    /**
+     * Add the rows written by backward to the row sets of the gradients.
+     * @param Xs the sparse input, whose non-zero features are the rows of gW written, or null for all the rows
+     */
+    void addGradientRows(SparseMatrix Xs) {
+        initGradientRows();
+        if (Xs == null)
+            gWRows.addAll();
+        else
+            gWRows.addColumns(Xs);
+        gbRows.addAll();
+    }
+
+    @Override
+    public Layer replicate() {
+        // share W and b, but not the gradients
+        Linear replica = new Linear(W, b);
+        replica.singlePrecision = singlePrecision;
+        return replica;
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+        this.WfKept = false;
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        X = Y = gX = null;
+        Xs = null;
+        Wf = Xf = Yf = gYf = gWf = gXf = null;
+    }
+
     @Override
     public String toString() {
         return String.format("Linear: %d in, %d out", W.rows, W.columns);
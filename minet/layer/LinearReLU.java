@@ -0,0 +1,68 @@
+// File: LinearReLU.java
+// Linear layer fused with a ReLU
+package minet.layer;
+
+import org.jblas.*;
+
+import minet.backend.Backends;
+import minet.layer.init.*;
+import minet.util.Workspace;
+
+/**
+ * A class for linear layers followed by a ReLU activation (Y = max(0, XW + b)).
+ * It is equivalent to a {@link Linear} layer followed by a {@link ReLU} layer,
+ * but the bias and the activation are applied in the same sweep over the output of the matrix product,
+ * and no intermediate matrix is needed.
+ *
+ * @author Phong Le
+ */
+public class LinearReLU extends Linear {
+
+	private static final long serialVersionUID = -2871570734567437261L;
+
+    // workspace, reused from mini-batch to mini-batch
+    transient DoubleMatrix gZ;  // gradient of Z = X * W + b
+
+    public LinearReLU(int indims, int outdims, WeightInit wInit) {
+        super(indims, outdims, wInit);
+    }
+
+    public LinearReLU(DoubleMatrix W, DoubleMatrix b) {
+        super(W, b);
+    }
+
+    @Override
+    public DoubleMatrix forward(Object input) {
+        DoubleMatrix Y = multiply(input);
+        // Y[i,j] = max(0, (X * W)[i,j] + b[j])
+        Backends.get().relu(Y, b, Y);
+        return Y;
+    }
+
+    @Override
+    public DoubleMatrix backward(DoubleMatrix gY) {
+        // gZ[i,j] = 0 if Y[i,j] <= 0 else gY[i,j]
+        gZ = Workspace.get(gZ, gY.rows, gY.columns);
+        Backends.get().reluBackward(Y, gY, gZ);
+        return super.backward(gZ);
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        super.releaseWorkspaces();
+        gZ = null;
+    }
+
+    @Override
+    public Layer replicate() {
+        // share W and b, but not the gradients
+        LinearReLU replica = new LinearReLU(W, b);
+        replica.singlePrecision = singlePrecision;
+        return replica;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LinearReLU: %d in, %d out", W.rows, W.columns);
+    }
+}
@@ -0,0 +1,68 @@
+// File: LinearSigmoid.java
+// Linear layer fused with a Sigmoid
+package minet.layer;
+
+import org.jblas.*;
+
+import minet.backend.Backends;
+import minet.layer.init.*;
+import minet.util.Workspace;
+
+/**
+ * A class for linear layers followed by a sigmoid activation (Y = 1 / (1 + exp(-(XW + b)))).
+ * It is equivalent to a {@link Linear} layer followed by a {@link Sigmoid} layer,
+ * but the bias and the activation are applied in the same sweep over the output of the matrix product,
+ * and no intermediate matrix is needed.
+ *
+ * @author Phong Le
+ */
+public class LinearSigmoid extends Linear {
+
+	private static final long serialVersionUID = 5396410834931853872L;
+
+    // workspace, reused from mini-batch to mini-batch
+    transient DoubleMatrix gZ;  // gradient of Z = X * W + b
+
+    public LinearSigmoid(int indims, int outdims, WeightInit wInit) {
+        super(indims, outdims, wInit);
+    }
+
+    public LinearSigmoid(DoubleMatrix W, DoubleMatrix b) {
+        super(W, b);
+    }
+
+    @Override
+    public DoubleMatrix forward(Object input) {
+        DoubleMatrix Y = multiply(input);
+        // Y[i,j] = 1 / (1 + exp(-((X * W)[i,j] + b[j])))
+        Backends.get().sigmoid(Y, b, Y);
+        return Y;
+    }
+
+    @Override
+    public DoubleMatrix backward(DoubleMatrix gY) {
+        // gZ = gY . (Y . (1 - Y))
+        gZ = Workspace.get(gZ, gY.rows, gY.columns);
+        Backends.get().sigmoidBackward(Y, gY, gZ);
+        return super.backward(gZ);
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        super.releaseWorkspaces();
+        gZ = null;
+    }
+
+    @Override
+    public Layer replicate() {
+        // share W and b, but not the gradients
+        LinearSigmoid replica = new LinearSigmoid(W, b);
+        replica.singlePrecision = singlePrecision;
+        return replica;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LinearSigmoid: %d in, %d out", W.rows, W.columns);
+    }
+}
@@ -0,0 +1,68 @@
+// File: LinearTanh.java
+// Linear layer fused with a Tanh
+package minet.layer;
+
+import org.jblas.*;
+
+import minet.backend.Backends;
+import minet.layer.init.*;
+import minet.util.Workspace;
+
+/**
+ * A class for linear layers followed by a tanh activation (Y = tanh(XW + b)).
+ * It is equivalent to a {@link Linear} layer followed by a {@link Tanh} layer,
+ * but the bias and the activation are applied in the same sweep over the output of the matrix product,
+ * and no intermediate matrix is needed.
+ *
+ * @author Phong Le
+ */
+public class LinearTanh extends Linear {
+
+	private static final long serialVersionUID = 8320947365127703418L;
+
+    // workspace, reused from mini-batch to mini-batch
+    transient DoubleMatrix gZ;  // gradient of Z = X * W + b
+
+    public LinearTanh(int indims, int outdims, WeightInit wInit) {
+        super(indims, outdims, wInit);
+    }
+
+    public LinearTanh(DoubleMatrix W, DoubleMatrix b) {
+        super(W, b);
+    }
+
+    @Override
+    public DoubleMatrix forward(Object input) {
+        DoubleMatrix Y = multiply(input);
+        // Y[i,j] = tanh((X * W)[i,j] + b[j])
+        Backends.get().tanh(Y, b, Y);
+        return Y;
+    }
+
+    @Override
+    public DoubleMatrix backward(DoubleMatrix gY) {
+        // gZ = gY . (1 - Y * Y)
+        gZ = Workspace.get(gZ, gY.rows, gY.columns);
+        Backends.get().tanhBackward(Y, gY, gZ);
+        return super.backward(gZ);
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        super.releaseWorkspaces();
+        gZ = null;
+    }
+
+    @Override
+    public Layer replicate() {
+        // share W and b, but not the gradients
+        LinearTanh replica = new LinearTanh(W, b);
+        replica.singlePrecision = singlePrecision;
+        return replica;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LinearTanh: %d in, %d out", W.rows, W.columns);
+    }
+}
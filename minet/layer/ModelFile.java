@@ -0,0 +1,288 @@
+// File: ModelFile.java
+// ModelFile class
+package minet.layer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * A binary checkpoint format for networks: the structure of the network (the layer types and shapes)
+ * followed by the raw weight blocks. Unlike Java serialization, the format does not depend on the classes' fields,
+ * and loading does not parse anything but a few ints: the weight block is memory-mapped and copied
+ * into the weight matrices in bulk, so even large networks load at memory bandwidth,
+ * and processes loading the same file read it from the same cached pages.
+ * (The weights still end up in a heap array per matrix, which jblas needs.)
+ * <pre>
+ * ModelFile.save(net, "model.bin");
+ * Sequential net = (Sequential)ModelFile.load("model.bin");
+ * </pre>
+ * Supported layers: {@link Sequential} (also {@link InstrumentedSequential}, saved as a plain Sequential),
+ * {@link Linear}, {@link LinearReLU}, {@link LinearSigmoid}, {@link LinearTanh}, {@link ReLU}, {@link Sigmoid},
+ * {@link Tanh}, {@link Softmax}; a {@link DataParallel} is saved as the network it wraps.
+ *
+ * Binary format (little-endian):
+ * <pre>
+ * header:    [magic (int)] [version (int)] [structure size in ints (int)] [0 (int)]
+ *            [weight block offset (long)] [number of weights (long)]
+ * structure: the layers, depth-first; each layer is its type (int) followed by
+ *            for Sequential: [number of layers (int)] and the layers,
+ *            for Linear*: [input dims (int)] [output dims (int)] [single precision (int, 0 or 1)],
+ *            nothing for the other layers
+ * padding:   up to the weight block offset (a multiple of 64)
+ * weights:   W (column-major) then b of each linear layer, in the order of the structure, as doubles
+ * </pre>
+ * @author Phong Le
+ */
+public class ModelFile {
+
+    static final int MAGIC = 0x4D4E4D44;  // "MNMD"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int ALIGNMENT = 64;
+    static final int MAX_DEPTH = 1000;  // maximum nesting of Sequential containers when loading
+
+    // layer types
+    static final int SEQUENTIAL = 1;
+    static final int LINEAR = 2;
+    static final int LINEAR_RELU = 3;
+    static final int LINEAR_SIGMOID = 4;
+    static final int LINEAR_TANH = 5;
+    static final int RELU = 6;
+    static final int SIGMOID = 7;
+    static final int TANH = 8;
+    static final int SOFTMAX = 9;
+
+    static final int CHUNK_BYTES = 1 << 30;  // the largest region mapped at once
+
+    private ModelFile() { }
+
+    /**
+     * Save a network.
+     * @param net the network
+     * @param path path to the file to be created (overwritten if it exists)
+     */
+    public static void save(Layer net, String path) throws IOException {
+        List<Integer> structure = new ArrayList<Integer>();
+        List<DoubleMatrix> blocks = new ArrayList<DoubleMatrix>();
+        describe(net, structure, blocks);
+
+        long nWeights = 0;
+        for (DoubleMatrix M : blocks) {
+            nWeights += M.length;
+        }
+        long weightsOffset = HEADER_BYTES + 4L * structure.size();
+        weightsOffset = (weightsOffset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        FileChannel channel = file.getChannel();
+        try {
+            file.setLength(0);
+            ByteBuffer buf = ByteBuffer.allocate((int)weightsOffset).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(structure.size()).putInt(0);
+            buf.putLong(weightsOffset).putLong(nWeights);
+            for (int v : structure) {
+                buf.putInt(v);
+            }
+            buf.position(buf.capacity());  // zero padding
+            writeFully(channel, buf);
+
+            buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer dbuf = buf.asDoubleBuffer();
+            for (DoubleMatrix M : blocks) {
+                for (int k = 0; k < M.length; ) {
+                    int n = Math.min(dbuf.capacity(), M.length - k);
+                    dbuf.clear();
+                    dbuf.put(M.data, k, n);
+                    buf.position(n * Double.BYTES);
+                    writeFully(channel, buf);
+                    k += n;
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write the structure of a layer and collect its weight blocks.
+     */
+    static void describe(Layer layer, List<Integer> structure, List<DoubleMatrix> blocks) {
+        if (layer instanceof DataParallel) {
+            describe(((DataParallel)layer).replicas[0], structure, blocks);
+        } else if (layer instanceof Sequential) {
+            Sequential seq = (Sequential)layer;
+            structure.add(SEQUENTIAL);
+            structure.add(seq.layers.length);
+            for (Layer l : seq.layers) {
+                describe(l, structure, blocks);
+            }
+        } else if (layer instanceof Linear) {
+            Linear linear = (Linear)layer;
+            int type;
+            if (layer.getClass() == Linear.class)
+                type = LINEAR;
+            else if (layer.getClass() == LinearReLU.class)
+                type = LINEAR_RELU;
+            else if (layer.getClass() == LinearSigmoid.class)
+                type = LINEAR_SIGMOID;
+            else if (layer.getClass() == LinearTanh.class)
+                type = LINEAR_TANH;
+            else
+                throw new IllegalArgumentException("cannot save layers of type " + layer.getClass().getName());
+            structure.add(type);
+            structure.add(linear.W.rows);
+            structure.add(linear.W.columns);
+            structure.add(linear.singlePrecision ? 1 : 0);
+            blocks.add(linear.W);
+            blocks.add(linear.b);
+        } else if (layer.getClass() == ReLU.class) {
+            structure.add(RELU);
+        } else if (layer.getClass() == Sigmoid.class) {
+            structure.add(SIGMOID);
+        } else if (layer.getClass() == Tanh.class) {
+            structure.add(TANH);
+        } else if (layer.getClass() == Softmax.class) {
+            structure.add(SOFTMAX);
+        } else {
+            throw new IllegalArgumentException("cannot save layers of type " + layer.getClass().getName());
+        }
+    }
+
+    /**
+     * Load a network saved by {@link #save(Layer, String)}.
+     * @param path path to the file
+     * @return the network (in training mode)
+     */
+    public static Layer load(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        FileChannel channel = file.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) { }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+                throw new IOException(path + " is not a minet model file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("unsupported minet model file version " + version);
+            int structureSize = header.getInt();
+            header.getInt();
+            long weightsOffset = header.getLong();
+            long nWeights = header.getLong();
+            if (structureSize < 0 || weightsOffset < HEADER_BYTES + 4L * structureSize
+                    || nWeights < 0 || nWeights > (channel.size() - weightsOffset) / Double.BYTES)
+                throw new IOException(path + " is truncated or corrupted");
+
+            IntBuffer structure = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * structureSize)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            long[] position = new long[] { weightsOffset };
+            long weightsEnd = weightsOffset + nWeights * Double.BYTES;
+            Layer net = build(structure, channel, position, weightsEnd, 0, path);
+            if (structure.hasRemaining() || position[0] != weightsEnd)
+                throw new IOException(path + " is corrupted");
+            return net;
+        } finally {
+            // the mappings remain valid after the channel is closed
+            file.close();
+        }
+    }
+
+    /**
+     * Create the next layer of the structure, reading its weights at position[0] (which is advanced).
+     * Every count and shape is checked against what is left of the structure and of the weight block
+     * (which ends at weightsEnd) before anything is allocated.
+     * @param depth the number of enclosing Sequential containers
+     */
+    static Layer build(IntBuffer structure, FileChannel channel, long[] position, long weightsEnd, int depth,
+                       String path) throws IOException {
+        int type = nextInt(structure, path);
+        switch (type) {
+            case SEQUENTIAL: {
+                int n = nextInt(structure, path);
+                // each layer takes at least one int of the structure
+                if (n < 0 || n > structure.remaining() || depth >= MAX_DEPTH)
+                    throw new IOException(path + " is corrupted");
+                Layer[] layers = new Layer[n];
+                for (int i = 0; i < layers.length; i++) {
+                    layers[i] = build(structure, channel, position, weightsEnd, depth + 1, path);
+                }
+                return new Sequential(layers);
+            }
+            case LINEAR:
+            case LINEAR_RELU:
+            case LINEAR_SIGMOID:
+            case LINEAR_TANH: {
+                int indims = nextInt(structure, path), outdims = nextInt(structure, path);
+                boolean singlePrecision = nextInt(structure, path) != 0;
+                long size = (long)indims * outdims;
+                if (indims < 0 || outdims < 0 || size > Integer.MAX_VALUE - 8
+                        || (size + outdims) * Double.BYTES > weightsEnd - position[0])
+                    throw new IOException(path + " is corrupted");
+                DoubleMatrix W = new DoubleMatrix(indims, outdims);
+                DoubleMatrix b = new DoubleMatrix(outdims);
+                readDoubles(channel, position, W.data);
+                readDoubles(channel, position, b.data);
+                Linear linear;
+                if (type == LINEAR)
+                    linear = new Linear(W, b);
+                else if (type == LINEAR_RELU)
+                    linear = new LinearReLU(W, b);
+                else if (type == LINEAR_SIGMOID)
+                    linear = new LinearSigmoid(W, b);
+                else
+                    linear = new LinearTanh(W, b);
+                linear.setSinglePrecision(singlePrecision);
+                return linear;
+            }
+            case RELU: return new ReLU();
+            case SIGMOID: return new Sigmoid();
+            case TANH: return new Tanh();
+            case SOFTMAX: return new Softmax();
+            default:
+                throw new IOException("unknown layer type " + type + " in " + path);
+        }
+    }
+
+    /**
+     * @return the next int of the structure
+     */
+    static int nextInt(IntBuffer structure, String path) throws IOException {
+        if (!structure.hasRemaining())
+            throw new IOException(path + " is corrupted");
+        return structure.get();
+    }
+
+    /**
+     * Fill an array with the doubles at position[0] of a file, mapping the region in chunks, and advance position[0].
+     */
+    static void readDoubles(FileChannel channel, long[] position, double[] data) throws IOException {
+        int perChunk = CHUNK_BYTES / Double.BYTES;
+        for (int k = 0; k < data.length; ) {
+            int n = Math.min(perChunk, data.length - k);
+            channel.map(FileChannel.MapMode.READ_ONLY, position[0], (long)n * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(data, k, n);
+            position[0] += (long)n * Double.BYTES;
+            k += n;
+        }
+    }
+
+    /**
+     * Write the content of a (filled) buffer to a channel and clear the buffer.
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+}
@@ -6,6 +6,10 @@ import org.jblas.*;
 
 import java.util.List;
 
+import minet.backend.Backends;
+import minet.util.RowSet;
+import minet.util.Workspace;
+
 /**
  * A class for ReLU layers (rectified linear unit) {@literal y = x if x > 0 else 0}.
  *
@@ -16,36 +20,34 @@ public class ReLU implements Layer, java.io.Serializable {
 	private static final long serialVersionUID = 6243622144246414861L;
 	// for backward
     DoubleMatrix X; 
+
+    boolean evalMode;  // if true, X is not stored (see setTraining)
+
+    // workspaces, reused from mini-batch to mini-batch
+    transient DoubleMatrix Y;
+    transient DoubleMatrix gX;
     
     public ReLU() {}
 
     @Override
     public DoubleMatrix forward(Object input) {
         DoubleMatrix X = (DoubleMatrix)input;
-        this.X = X.dup();
+        this.X = evalMode ? null : X;  // X is not modified before backward, no need to copy it
 
         // Y[i,j] = max(0, X[i,j])
-        DoubleMatrix Y = X.dup();
-        for (int i = 0; i < Y.rows; i++) {
-            for (int j = 0; j < Y.columns; j++) {
-                if (X.get(i, j) <= 0)
-                    Y.put(i, j, 0);
-            }
-        }
+        Y = Workspace.get(Y, X.rows, X.columns);
+        Backends.get().relu(X, null, Y);
         return Y;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix gY) {
-        // gX[i,j] = 0 if X[i,j] <= 0 0 else gY[i,j]
-        DoubleMatrix gX = gY.dup();
-        for (int i = 0; i < gX.rows; i++) {
-            for (int j = 0; j < gX.columns; j++) {
-                if (X.get(i, j) <= 0)
-                    gX.put(i, j, 0);
-            }
-        }
+        if (evalMode)
+            throw new IllegalStateException("backward is not allowed in evaluation mode");
 
+        // gX[i,j] = 0 if X[i,j] <= 0 0 else gY[i,j]
+        gX = Workspace.get(gX, gY.rows, gY.columns);
+        Backends.get().reluBackward(X, gY, gX);
         return gX;
     }
 
@@ -59,6 +61,31 @@ public class ReLU implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new ReLU();
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        X = Y = gX = null;
+    }
+
     @Override
     public String toString() {
         return "ReLU";
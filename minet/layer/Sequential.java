@@ -5,6 +5,9 @@ package minet.layer;
 
 import org.jblas.DoubleMatrix;
 
+import minet.backend.Backends;
+import minet.util.RowSet;
+
 import java.util.List;
 
 
@@ -21,27 +24,172 @@ public class Sequential implements Layer, java.io.Serializable {
 	
 	Layer[] layers;         
 
+    boolean evalMode;   // see setTraining
+
+    // activation checkpointing (see setCheckpointing): the layers are split into segments of segmentLength layers,
+    // and only the input of each segment is kept from forward to backward
+    int segmentLength;  // 0 if checkpointing is off
+    transient Object[] checkpoints;  // the input of each segment
+
     public Sequential(Layer[] layers) {
         this.layers = layers;
     }
 
     @Override
     public DoubleMatrix forward(Object input) {
+        if (segmentLength <= 0 || evalMode) {
+            Object X = input;
+            for (int i = 0; i < layers.length; i++) {
+                X = forwardLayer(i, X);
+            }
+            return (DoubleMatrix)X;
+        }
+
+        // keep only the input of each segment; the activations inside the segments (but the last one) are dropped,
+        // and recomputed by backward
+        int nSegments = (layers.length + segmentLength - 1) / segmentLength;
+        if (checkpoints == null || checkpoints.length != nSegments)
+            checkpoints = new Object[nSegments];
         Object X = input;
-        for (int i = 0; i < layers.length; i++) {
-            X = layers[i].forward(X);
+        for (int s = 0; s < nSegments; s++) {
+            checkpoints[s] = X;
+            X = forwardSegment(s, X);
+            if (s < nSegments - 1)
+                releaseSegment(s);
         }
         return (DoubleMatrix)X;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix dY) {
-        for (int i = layers.length-1; i >= 0; i--) {
-            dY = layers[i].backward(dY);
+        if (segmentLength <= 0 || checkpoints == null) {
+            for (int i = layers.length-1; i >= 0; i--) {
+                dY = backwardLayer(i, dY);
+            }
+            return dY;
+        }
+
+        for (int s = checkpoints.length - 1; s >= 0; s--) {
+            boolean last = s == checkpoints.length - 1;
+            // the activations of the last segment are still there, the others are recomputed from the segment's input
+            if (!last)
+                forwardSegment(s, checkpoints[s]);
+            for (int i = Math.min((s + 1) * segmentLength, layers.length) - 1; i >= s * segmentLength; i--) {
+                dY = backwardLayer(i, dY);
+            }
+            if (!last)
+                releaseSegment(s);
+            checkpoints[s] = null;
         }
+        checkpoints = null;
         return dY;
     }
 
+    /**
+     * Forward through the layers of a segment.
+     */
+    Object forwardSegment(int s, Object X) {
+        for (int i = s * segmentLength; i < Math.min((s + 1) * segmentLength, layers.length); i++) {
+            X = forwardLayer(i, X);
+        }
+        return X;
+    }
+
+    /**
+     * Forward through the i-th layer. All the forward passes of this container go through this method
+     * (overridden e.g. by {@link InstrumentedSequential}).
+     */
+    protected DoubleMatrix forwardLayer(int i, Object X) {
+        return layers[i].forward(X);
+    }
+
+    /**
+     * Backward through the i-th layer. All the backward passes of this container go through this method.
+     */
+    protected DoubleMatrix backwardLayer(int i, DoubleMatrix dY) {
+        return layers[i].backward(dY);
+    }
+
+    /**
+     * Drop the activations and workspaces of the layers of a segment.
+     */
+    void releaseSegment(int s) {
+        for (int i = s * segmentLength; i < Math.min((s + 1) * segmentLength, layers.length); i++) {
+            layers[i].releaseWorkspaces();
+        }
+    }
+
+    /**
+     * Turn activation checkpointing on or off. With checkpointing, the layers are split into segments,
+     * and only the input of each segment (and the activations of the last segment) is kept from forward to backward.
+     * Backward recomputes the forward pass of each segment when it gets there.
+     * This costs about one more forward pass per training step, but with segments of sqrt(#layers) layers,
+     * only O(sqrt(#layers)) activations are alive at any time instead of O(#layers),
+     * which allows larger mini-batches for deep networks.
+     * The layers must compute the same output when forward is called again on the same input.
+     * @param segmentLength the number of layers per segment, or 0 to turn checkpointing off (the default)
+     */
+    public void setCheckpointing(int segmentLength) {
+        if (segmentLength < 0)
+            throw new IllegalArgumentException("segmentLength must not be negative");
+        this.segmentLength = segmentLength;
+        this.checkpoints = null;
+    }
+
+    /**
+     * Turn activation checkpointing on, with segments of ceil(sqrt(#layers)) layers, or off.
+     * See {@link #setCheckpointing(int)}.
+     * @param checkpointing true for turning checkpointing on
+     */
+    public void setCheckpointing(boolean checkpointing) {
+        setCheckpointing(checkpointing ? (int)Math.ceil(Math.sqrt(layers.length)) : 0);
+    }
+
+    /**
+     * Compute the output of the network without its final softmax layer (if any), i.e. the logits.
+     * Because softmax does not change the order of the values in a row, the logits are enough for prediction.
+     * This is typically used in evaluation mode (see {@link #setTraining(boolean)}).
+     * @param input input fed to the first layer
+     * @return a [minibatch_size x output_dims] matrix
+     */
+    public DoubleMatrix predict(Object input) {
+        int n = layers.length;
+        if (n > 0 && layers[n - 1] instanceof Softmax)
+            n--;
+        Object X = input;
+        for (int i = 0; i < n; i++) {
+            X = forwardLayer(i, X);
+        }
+        return (DoubleMatrix)X;
+    }
+
+    /**
+     * Predict the label of each instance, i.e. the argmax of each row of {@link #predict(Object)}.
+     * @param input input fed to the first layer
+     * @return an array of minibatch_size labels
+     */
+    public int[] predictLabels(Object input) {
+        DoubleMatrix Y = predict(input);
+        int[] labels = new int[Y.rows];
+        Backends.get().rowArgmaxs(Y, labels);
+        return labels;
+    }
+
+    /**
+     * @return the number of layers
+     */
+    public int size() {
+        return layers.length;
+    }
+
+    /**
+     * @param i an index in [0, size())
+     * @return the i-th layer
+     */
+    public Layer getLayer(int i) {
+        return layers[i];
+    }
+
     @Override
     public List<DoubleMatrix> getAllWeights(List<DoubleMatrix> weights) {
         for (int i = 0; i < layers.length; i++) {
@@ -58,6 +206,60 @@ public class Sequential implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].getAllGradientRows(rows);
+        }
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        Layer[] replicas = new Layer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            replicas[i] = layers[i].replicate();
+        }
+        Sequential replica = new Sequential(replicas);
+        replica.segmentLength = segmentLength;
+        return replica;
+    }
+
+    /**
+     * Compute the matrix products of all linear layers in single precision or not
+     * (see {@link Linear#setSinglePrecision(boolean)}).
+     * @param singlePrecision true for single precision, false for double precision (the default)
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i] instanceof Linear)
+                ((Linear)layers[i]).setSinglePrecision(singlePrecision);
+            else if (layers[i] instanceof Sequential)
+                ((Sequential)layers[i]).setSinglePrecision(singlePrecision);
+        }
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].setTraining(training);
+        }
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].releaseWorkspaces();
+        }
+        checkpoints = null;
+    }
+
     @Override
     public String toString() {
         StringBuilder str = new StringBuilder();
@@ -6,6 +6,10 @@ import org.jblas.*;
 
 import java.util.List;
 
+import minet.backend.Backends;
+import minet.util.RowSet;
+import minet.util.Workspace;
+
 /**
  * A class for sigmoid layers {@literal y = 1 / (1 + exp(-x))}.
  *
@@ -18,6 +22,11 @@ public class Sigmoid implements Layer, java.io.Serializable {
 	
 	// for backward
     DoubleMatrix Y;
+
+    boolean evalMode;  // if true, backward is not allowed (see setTraining)
+
+    // workspace, reused from mini-batch to mini-batch
+    transient DoubleMatrix gX;
     
     public Sigmoid() {}
 
@@ -25,15 +34,21 @@ public class Sigmoid implements Layer, java.io.Serializable {
     public DoubleMatrix forward(Object input) {
         DoubleMatrix X = (DoubleMatrix)input;
         // Y[i] = 1 / (1 + exp(-X[i]))
-        DoubleMatrix Y = MatrixFunctions.expi(X.mul(-1)).addi(1).rdivi(1);
-        this.Y = Y.dup();
+        // Y is owned by this layer and is not modified before backward, no need to copy it
+        Y = Workspace.get(Y, X.rows, X.columns);
+        Backends.get().sigmoid(X, null, Y);
         return Y;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix gY) {
+        if (evalMode)
+            throw new IllegalStateException("backward is not allowed in evaluation mode");
+
         // gX = gY . (Y . (1 - Y))
-        return gY.mul(Y.mul(Y.rsub(1)));
+        gX = Workspace.get(gX, gY.rows, gY.columns);
+        Backends.get().sigmoidBackward(Y, gY, gX);
+        return gX;
     }
 
     @Override
@@ -46,6 +61,31 @@ public class Sigmoid implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new Sigmoid();
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        Y = gX = null;
+    }
+
     @Override
     public String toString() {
         return "Sigmoid";
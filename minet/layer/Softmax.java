@@ -7,6 +7,11 @@ import org.jblas.*;
 
 import java.util.List;
 
+import minet.backend.Backend;
+import minet.backend.Backends;
+import minet.util.RowSet;
+import minet.util.Workspace;
+
 
 /**
  * A class for softmax layers {@literal y[i] = exp(x[i]) / sum_j exp(x[j])}.
@@ -19,25 +24,45 @@ public class Softmax implements Layer, java.io.Serializable {
 	
 	// for backward
     DoubleMatrix Y;
+
+    boolean evalMode;  // if true, backward is not allowed (see setTraining)
+
+    // workspaces, reused from mini-batch to mini-batch
+    transient DoubleMatrix gX;
+    transient DoubleMatrix rowBuf;  // one value per row (max, normalizer, ...)
     
     public Softmax() {}
 
     @Override
     public DoubleMatrix forward(Object input) {
         DoubleMatrix X = (DoubleMatrix)input;
-        // Y[:,j] = exp(Y[:,j]) / sum_k exp(Y[:,k])
-        DoubleMatrix maxVal = X.rowMaxs();
-        DoubleMatrix Y = MatrixFunctions.expi(X.subColumnVector(maxVal));
-        DoubleMatrix norm = Y.rowSums();
-        Y = Y.diviColumnVector(norm);
-        this.Y = Y.dup();
+        Backend backend = Backends.get();
+        Y = Workspace.get(Y, X.rows, X.columns);
+        rowBuf = Workspace.get(rowBuf, X.rows, 1);
+
+        // Y[:,j] = exp(X[:,j] - max) / sum_k exp(X[:,k] - max)
+        backend.rowMaxs(X, rowBuf);
+        backend.subColumnVector(X, rowBuf, Y);
+        backend.exp(Y, Y);
+        backend.rowSums(Y, rowBuf);
+        backend.divColumnVector(Y, rowBuf, Y);
+        // Y is owned by this layer and is not modified before backward, no need to copy it
         return Y;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix gY) {
+        if (evalMode)
+            throw new IllegalStateException("backward is not allowed in evaluation mode");
+
         // gX[:,j] = Y[:,j] * (gY[:,j] - sum_i gY[:,i] Y[:,i])
-        return gY.subColumnVector(Y.mul(gY).rowSums()).muli(Y);
+        Backend backend = Backends.get();
+        gX = Workspace.get(gX, gY.rows, gY.columns);
+        rowBuf = Workspace.get(rowBuf, gY.rows, 1);
+        backend.rowDots(gY, Y, rowBuf);
+        backend.subColumnVector(gY, rowBuf, gX);
+        backend.mul(gX, Y, gX);
+        return gX;
     }
 
     @Override
@@ -50,6 +75,31 @@ public class Softmax implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new Softmax();
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        Y = gX = rowBuf = null;
+    }
+
     @Override
     public String toString() {
         return "Softmax";
@@ -6,6 +6,10 @@ import org.jblas.*;
 
 import java.util.List;
 
+import minet.backend.Backends;
+import minet.util.RowSet;
+import minet.util.Workspace;
+
 /**
  * A class for sigmoid layers {@literal y = 1 / (1 + exp(-x))}.
  *
@@ -16,6 +20,11 @@ public class Tanh implements Layer, java.io.Serializable {
 	private static final long serialVersionUID = -7444093094282163781L;
 	// for backward
     DoubleMatrix Y;
+
+    boolean evalMode;  // if true, backward is not allowed (see setTraining)
+
+    // workspace, reused from mini-batch to mini-batch
+    transient DoubleMatrix gX;
     
     public Tanh() {}
 
@@ -23,15 +32,21 @@ public class Tanh implements Layer, java.io.Serializable {
     public DoubleMatrix forward(Object input) {
         DoubleMatrix X = (DoubleMatrix)input;
         // Y[i] = tanh(X[i])
-        DoubleMatrix Y = MatrixFunctions.tanh(X);
-        this.Y = Y.dup();
+        // Y is owned by this layer and is not modified before backward, no need to copy it
+        Y = Workspace.get(Y, X.rows, X.columns);
+        Backends.get().tanh(X, null, Y);
         return Y;
     }
 
     @Override
     public DoubleMatrix backward(DoubleMatrix gY) {
+        if (evalMode)
+            throw new IllegalStateException("backward is not allowed in evaluation mode");
+
         // gX = gY . (1 - Y * Y)
-        return gY.mul((Y.mul(Y)).rsub(1));
+        gX = Workspace.get(gX, gY.rows, gY.columns);
+        Backends.get().tanhBackward(Y, gY, gX);
+        return gX;
     }
 
     @Override
@@ -44,6 +59,31 @@ public class Tanh implements Layer, java.io.Serializable {
         return grads;
     }
 
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new Tanh();
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.evalMode = !training;
+    }
+
+    @Override
+    public boolean isTraining() {
+        return !evalMode;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        Y = gX = null;
+    }
+
     @Override
     public String toString() {
         return "Tanh";
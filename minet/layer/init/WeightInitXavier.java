@@ -17,7 +17,7 @@ public class WeightInitXavier implements  WeightInit {
 
     @Override
     public DoubleMatrix generate(int indims, int outdims) {
-        double a = (double) (Math.sqrt(6) / Math.sqrt(indims + outdims));
+        double a = Math.sqrt(6) / Math.sqrt(indims + outdims);
         return DoubleMatrix.rand(indims, outdims).mul(2 * a).add(-a);
     }
 }
@@ -4,6 +4,9 @@ package minet.loss;
 
 import org.jblas.DoubleMatrix;
 
+import minet.backend.Backends;
+import minet.util.Workspace;
+
 /**
  * A class for computing cross entropy loss
  * @author Phong Le
@@ -12,6 +15,9 @@ public class CrossEntropy implements Loss {
     DoubleMatrix Yhat;
     int[] labels;
 
+    // workspace, reused from mini-batch to mini-batch
+    DoubleMatrix dY;
+
     /**
      * Constructor for CrossEntropy loss function
      */
@@ -25,8 +31,9 @@ public class CrossEntropy implements Loss {
      */
     @Override
     public double forward(DoubleMatrix Y, DoubleMatrix Yhat) {
-        this.Yhat = Yhat.dup();
-        this.labels = new int[Y.length];
+        this.Yhat = Yhat;  // Yhat is not modified before backward, no need to copy it
+        if (this.labels == null || this.labels.length != Y.length)
+            this.labels = new int[Y.length];
         for (int i = 0; i < Y.length; i++) {
             this.labels[i] = (int) Y.data[i];
         }
@@ -44,11 +51,18 @@ public class CrossEntropy implements Loss {
      */
     @Override
     public DoubleMatrix backward() {
-        DoubleMatrix dY = DoubleMatrix.zeros(this.Yhat.rows, this.Yhat.columns);
+        dY = Workspace.get(dY, this.Yhat.rows, this.Yhat.columns);
+        dY.fill(0);
         for (int i = 0; i < this.labels.length; i++) {
             dY.put(i, this.labels[i], -1 / (this.Yhat.get(i, this.labels[i]) + 1e-7));
         }
-        return dY.divi(dY.rows);
+        Backends.get().scale(1. / dY.rows, dY);
+        return dY;
+    }
+
+    @Override
+    public Loss replicate() {
+        return new CrossEntropy();
     }
 
     @Override
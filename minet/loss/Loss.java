@@ -24,4 +24,10 @@ public interface Loss {
      * @return a minibatch_size-row matrix
      */
     public DoubleMatrix backward();
+
+    /**
+     * Create a new loss of the same kind, with its own workspaces (e.g. one per thread for parallel training).
+     * @return a new loss
+     */
+    public Loss replicate();
 }
@@ -3,7 +3,10 @@
 package minet.loss;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.MatrixFunctions;
+
+import minet.backend.Backend;
+import minet.backend.Backends;
+import minet.util.Workspace;
 
 
 /**
@@ -12,7 +15,9 @@ import org.jblas.MatrixFunctions;
  */
 public class MeanSquaredError implements Loss {
     DoubleMatrix Y;
-    DoubleMatrix Yhat;
+
+    // gradient wrt Yhat, computed by forward
+    DoubleMatrix dY;
 
     public MeanSquaredError() { }
 
@@ -24,22 +29,35 @@ public class MeanSquaredError implements Loss {
      */
     @Override
     public double forward(DoubleMatrix Y, DoubleMatrix Yhat) {
+        this.Y = Workspace.get(this.Y, Yhat.rows, Yhat.columns);
+
     	// if being used for classification, the ground-truth is a vector, so we need to make it become a matrix    	
     	if ((Y.columns==1) && Yhat.columns>1) {    		
-    		this.Y = DoubleMatrix.zeros(Yhat.rows, Yhat.columns);    		
+            this.Y.fill(0);
             for (int i = 0; i < Y.rows; i++) {
                 this.Y.put(i, (int)Y.get(i,0), 1);
             }
     	} else {
-    		this.Y = Y.dup();
+            this.Y.copy(Y);
     	}
-        this.Yhat = Yhat.dup();
-        return MatrixFunctions.powi(this.Y.sub(Yhat), 2.).columnSums().sum() / this.Y.rows;
+
+        // the gradient dY = -2 (Y - Yhat) / n is computed here, the loss is sum (Y - Yhat)^2 / n
+        Backend backend = Backends.get();
+        dY = Workspace.get(dY, Yhat.rows, Yhat.columns);
+        backend.sub(Yhat, this.Y, dY);
+        double lossVal = backend.dot(dY, dY) / this.Y.rows;
+        backend.scale(2. / (double) this.Y.rows, dY);
+        return lossVal;
     }
 
     @Override
     public DoubleMatrix backward() {
-        return (this.Y.sub(this.Yhat)).muli(2. / (double) this.Y.rows).muli(-1);
+        return dY;
+    }
+
+    @Override
+    public Loss replicate() {
+        return new MeanSquaredError();
     }
 
     @Override
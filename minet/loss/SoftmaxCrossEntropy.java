@@ -0,0 +1,88 @@
+// File: SoftmaxCrossEntropy.java
+// SoftmaxCrossEntropy class
+package minet.loss;
+
+import org.jblas.DoubleMatrix;
+
+import minet.backend.Backend;
+import minet.backend.Backends;
+import minet.util.Workspace;
+
+/**
+ * A class for computing cross entropy loss directly from logits,
+ * i.e. a {@link minet.layer.Softmax} layer followed by {@link CrossEntropy} loss.
+ * The network must therefore not end with a Softmax layer.
+ * Working on logits is cheaper (the gradient is simply {@literal (p - onehot(y)) / minibatch_size})
+ * and numerically more stable (no division by probabilities).
+ * @author Phong Le
+ */
+public class SoftmaxCrossEntropy implements Loss {
+
+    // gradient wrt the logits, computed by forward
+    DoubleMatrix dY;
+
+    // workspaces, reused from mini-batch to mini-batch
+    DoubleMatrix rowMax;
+    DoubleMatrix rowSum;
+
+    /**
+     * Constructor for SoftmaxCrossEntropy loss function
+     */
+    public SoftmaxCrossEntropy() { }
+
+    /**
+     * Compute a loss value given groud-truth Y and logits Yhat
+     * @param Y a [minibatch_size x 1] matrix, each row is the ground-truth label of an instance
+     * @param Yhat a [minibatch_size x d] matrix, each row contains the logits (scores before softmax) of an instance
+     * @return the loss value (a double)
+     */
+    @Override
+    public double forward(DoubleMatrix Y, DoubleMatrix Yhat) {
+        int n = Yhat.rows;
+        Backend backend = Backends.get();
+        dY = Workspace.get(dY, n, Yhat.columns);
+        rowMax = Workspace.get(rowMax, n, 1);
+        rowSum = Workspace.get(rowSum, n, 1);
+        double[] x = Yhat.data, m = rowMax.data, s = rowSum.data;
+
+        // dY[i,j] = exp(Yhat[i,j] - m[i]), where m[i] = max_j Yhat[i,j]
+        backend.rowMaxs(Yhat, rowMax);
+        backend.subColumnVector(Yhat, rowMax, dY);
+        backend.exp(dY, dY);
+        backend.rowSums(dY, rowSum);
+
+        // loss = - sum_i log p[i, y_i] / n, where log p[i,j] = Yhat[i,j] - m[i] - log s[i]
+        double lossVal = 0;
+        for (int i = 0; i < n; i++) {
+            int label = (int) Y.data[i];
+            lossVal -= x[i + label * n] - m[i] - Math.log(s[i]);
+            s[i] *= n;
+        }
+
+        // dL/dYhat = (p - onehot(y)) / n
+        backend.divColumnVector(dY, rowSum, dY);
+        for (int i = 0; i < n; i++) {
+            dY.data[i + (int) Y.data[i] * n] -= 1. / n;
+        }
+        return lossVal / n;
+    }
+
+    /**
+     * Compute gradient of the loss wrt the logits
+     * @return a matrix (DoubleMatrix), with #rows = #samples, #cols = #output nodes of the network
+     */
+    @Override
+    public DoubleMatrix backward() {
+        return dY;
+    }
+
+    @Override
+    public Loss replicate() {
+        return new SoftmaxCrossEntropy();
+    }
+
+    @Override
+    public String toString() {
+        return "SoftmaxCrossEntropyLoss";
+    }
+}
@@ -0,0 +1,114 @@
+// File: Metrics.java
+// Metrics class
+package minet.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registry of the training metrics: a set of named {@link Timer}s, recording wall time, allocated bytes and
+ * number of samples of e.g. the forward and backward passes of each layer
+ * (see {@link minet.layer.InstrumentedSequential}), the optimizer steps (see {@link minet.optim.InstrumentedOptimizer})
+ * or the mini-batch assembly.
+ *
+ * Metrics are off by default (then the instrumented code only checks a flag), and turned on
+ * by {@link #setEnabled(boolean)} or the system property {@code -Dminet.metrics=true}.
+ * When on, each measure is also emitted as a JFR event (see {@link TimerEvent}), e.g. for
+ * {@code java -XX:StartFlightRecording=filename=train.jfr -Dminet.metrics=true ...}.
+ *
+ * @author Phong Le
+ */
+public class Metrics {
+
+    static volatile boolean enabled = Boolean.getBoolean("minet.metrics");
+
+    static final Map<String, Timer> timers = new LinkedHashMap<String, Timer>();
+
+    // per-thread allocation counter (HotSpot only), null if not available
+    static final com.sun.management.ThreadMXBean allocations = allocationCounter();
+
+    private Metrics() { }
+
+    static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn the recording of metrics on or off.
+     * @param enabled true for turning it on
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Get a timer, creating it if needed.
+     * @param name the name of the timer
+     * @return the timer with this name
+     */
+    public static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    /**
+     * @return all the timers, in order of creation
+     */
+    public static synchronized List<Timer> getTimers() {
+        return new ArrayList<Timer>(timers.values());
+    }
+
+    /**
+     * Set all the timers to 0 (e.g. at the beginning of each epoch).
+     */
+    public static synchronized void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or 0 if the JVM does not count them
+     */
+    public static long allocatedBytes() {
+        if (allocations == null)
+            return 0;
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return a table of all the timers which have been used
+     */
+    public static String report() {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%-40s %10s %12s %10s %12s %12s\n",
+                "timer", "calls", "total(ms)", "mean(ms)", "samples/s", "alloc(MB)"));
+        for (Timer timer : getTimers()) {
+            if (timer.getCount() > 0)
+                str.append(timer).append("\n");
+        }
+        return str.toString();
+    }
+}
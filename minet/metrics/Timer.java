@@ -0,0 +1,147 @@
+// File: Timer.java
+// Timer class
+package minet.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named timer accumulating the wall time, the allocated bytes and the number of samples
+ * of a piece of code, over all the threads running it:
+ * <pre>
+ * Timer.Span span = timer.start();
+ * ... // process n samples
+ * timer.stop(span, n);
+ * </pre>
+ * When metrics are off (see {@link Metrics#setEnabled(boolean)}), start returns null and stop does nothing.
+ * Timers are obtained by {@link Metrics#timer(String)}.
+ *
+ * @author Phong Le
+ */
+public class Timer {
+
+    /**
+     * A running measure, see {@link Timer#start()}.
+     */
+    public static class Span {
+        final long startNanos;
+        final long startBytes;
+        final TimerEvent event;
+
+        Span(TimerEvent event) {
+            this.event = event;
+            this.startBytes = Metrics.allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    final String name;
+    final LongAdder count = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder samples = new LongAdder();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start a measure.
+     * @return the running measure, or null if metrics are off
+     */
+    public Span start() {
+        if (!Metrics.enabled)
+            return null;
+        TimerEvent event = new TimerEvent();
+        event.begin();
+        return new Span(event);
+    }
+
+    /**
+     * Finish a measure.
+     * @param span the measure returned by {@link #start()} (can be null)
+     * @param nSamples the number of samples processed
+     */
+    public void stop(Span span, int nSamples) {
+        if (span == null)
+            return;
+        long elapsed = System.nanoTime() - span.startNanos;
+        long allocated = Metrics.allocatedBytes() - span.startBytes;
+        count.increment();
+        nanos.add(elapsed);
+        bytes.add(allocated);
+        samples.add(nSamples);
+
+        TimerEvent event = span.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.timer = name;
+            event.samples = nSamples;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+
+    /**
+     * Set the timer to 0.
+     */
+    public void reset() {
+        count.reset();
+        nanos.reset();
+        bytes.reset();
+        samples.reset();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of measures
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the total wall time, in nanoseconds (summed over threads)
+     */
+    public long getTotalNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * @return the total number of bytes allocated
+     */
+    public long getAllocatedBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the total number of samples
+     */
+    public long getSamples() {
+        return samples.sum();
+    }
+
+    /**
+     * @return the mean wall time of a measure, in milliseconds
+     */
+    public double getMeanMillis() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / 1e6 / n;
+    }
+
+    /**
+     * @return the number of samples per second of wall time
+     */
+    public double getSamplesPerSecond() {
+        long t = getTotalNanos();
+        return t == 0 ? 0 : getSamples() / (t / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-40s %10d %12.1f %10.3f %12.0f %12.1f", name, getCount(), getTotalNanos() / 1e6,
+                getMeanMillis(), getSamplesPerSecond(), getAllocatedBytes() / (1024. * 1024.));
+    }
+}
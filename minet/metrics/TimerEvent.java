@@ -0,0 +1,32 @@
+// File: TimerEvent.java
+// TimerEvent class
+package minet.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event emitted by each measure of a {@link Timer}. Its duration is the measured wall time.
+ * @author Phong Le
+ */
+@Name("minet.Timer")
+@Label("Minet Timer")
+@Category("Minet")
+@Description("A measure of a minet timer, e.g. the forward pass of a layer")
+@StackTrace(false)
+public class TimerEvent extends jdk.jfr.Event {
+
+    @Label("Timer")
+    public String timer;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Allocated")
+    @DataAmount
+    public long allocated;
+}
@@ -0,0 +1,70 @@
+// File: Adam.java
+// Adam class
+package minet.optim;
+
+import minet.layer.Layer;
+
+/**
+ * Adam optimizer (Kingma and Ba, 2015):
+ * {@literal m = beta1 * m + (1 - beta1) * g}, {@literal v = beta2 * v + (1 - beta2) * g^2},
+ * {@literal w = w - lr * mhat / (sqrt(vhat) + eps)}, where mhat and vhat are the bias-corrected m and v.
+ * @author Phong Le
+ */
+public class Adam extends FlatOptimizer {
+    double beta1, beta2, eps;
+    double weightDecay;  // decoupled weight decay, see AdamW
+    double[] m, v;       // first and second moments
+
+    // per-step constants: lr / (1 - beta1^step) and 1 / (1 - beta2^step)
+    double c1, c2;
+
+    /**
+     * Constructor for Adam with beta1 = 0.9, beta2 = 0.999, eps = 1e-8
+     * @param net the network to be trained
+     * @param learningRate learning rate (e.g. 0.001)
+     */
+    public Adam(Layer net, double learningRate) {
+        this(net, learningRate, 0.9, 0.999, 1e-8);
+    }
+
+    public Adam(Layer net, double learningRate, double beta1, double beta2, double eps) {
+        super(net, learningRate);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.eps = eps;
+        this.m = new double[getSize()];
+        this.v = new double[getSize()];
+    }
+
+    @Override
+    protected void prepareStep() {
+        c1 = lr / (1 - Math.pow(beta1, step));
+        c2 = 1 / (1 - Math.pow(beta2, step));
+    }
+
+    @Override
+    protected void update(double[] w, double[] g, int from, int to, int base) {
+        double b1 = beta1, b2 = beta2, c1 = this.c1, c2 = this.c2, eps = this.eps;
+        double decay = lr * weightDecay;
+        double[] m = this.m, v = this.v;
+        for (int k = from, i = base + from; k < to; k++, i++) {
+            double gk = g[k];
+            double mk = b1 * m[i] + (1 - b1) * gk;
+            double vk = b2 * v[i] + (1 - b2) * gk * gk;
+            m[i] = mk;
+            v[i] = vk;
+            w[k] -= decay * w[k] + c1 * mk / (Math.sqrt(vk * c2) + eps);
+            g[k] = 0;
+        }
+    }
+
+    @Override
+    protected long costPerParameter() {
+        return 16;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Adam: lr %g, beta1 %g, beta2 %g, eps %g", lr, beta1, beta2, eps);
+    }
+}
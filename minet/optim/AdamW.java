@@ -0,0 +1,35 @@
+// File: AdamW.java
+// AdamW class
+package minet.optim;
+
+import minet.layer.Layer;
+
+/**
+ * AdamW optimizer (Loshchilov and Hutter, 2019): {@link Adam} with decoupled weight decay,
+ * i.e. {@literal w = w - lr * weightDecay * w} is applied besides the Adam update
+ * (instead of adding {@literal weightDecay * w} to the gradient).
+ * @author Phong Le
+ */
+public class AdamW extends Adam {
+
+    /**
+     * Constructor for AdamW with beta1 = 0.9, beta2 = 0.999, eps = 1e-8
+     * @param net the network to be trained
+     * @param learningRate learning rate (e.g. 0.001)
+     * @param weightDecay weight decay factor (e.g. 0.01)
+     */
+    public AdamW(Layer net, double learningRate, double weightDecay) {
+        this(net, learningRate, 0.9, 0.999, 1e-8, weightDecay);
+    }
+
+    public AdamW(Layer net, double learningRate, double beta1, double beta2, double eps, double weightDecay) {
+        super(net, learningRate, beta1, beta2, eps);
+        this.weightDecay = weightDecay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdamW: lr %g, beta1 %g, beta2 %g, eps %g, weight decay %g",
+                lr, beta1, beta2, eps, weightDecay);
+    }
+}
@@ -0,0 +1,258 @@
+// File: FlatOptimizer.java
+// FlatOptimizer class
+package minet.optim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jblas.DoubleMatrix;
+
+import minet.layer.Layer;
+import minet.util.Parallel;
+import minet.util.RowSet;
+
+/**
+ * Abstract class for optimizers updating all the parameters of a network in a single pass.
+ * The parameters (weight matrices and bias vectors) are numbered in one flat index space:
+ * parameter tensor t covers [offsets[t], offsets[t+1]). The state of an optimizer (e.g. momentum)
+ * is one contiguous array over this index space, and each update is split over threads
+ * by ranges of this space for large networks.
+ *
+ * Each update also sets the gradients to 0. When a layer tells which rows of a gradient may be non-zero
+ * (see {@link Layer#getAllGradientRows(List)}), e.g. the rows of the non-zero features of a sparse input,
+ * and they are few, only these rows are set to 0 by {@link #resetGradients()}, which therefore costs nothing
+ * after an update unless backward has been run since;
+ * they are also the only rows updated by optimizers for which a zero gradient changes nothing
+ * (see {@link #skipsZeroGradients()}).
+ * Child classes implement {@link #update(double[], double[], int, int, int)}.
+ * @author Phong Le
+ */
+public abstract class FlatOptimizer implements Optimizer {
+
+    DoubleMatrix[] weights;  // parameter tensors
+    DoubleMatrix[] grads;    // their gradients
+    RowSet[] gradRows;       // the rows of each gradient which may be non-zero (null if unknown)
+    int[] offsets;           // tensor t covers [offsets[t], offsets[t+1]) of the flat index space
+    boolean[] byRows;        // byRows[t] is true if tensor t is visited row by row in the current pass
+    int size;                // the total number of parameters
+
+    double lr;               // learning rate
+    int step;                // the number of updates so far
+
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    boolean parallel = true;  // if false, updates run in the calling thread
+
+    /**
+     * Constructor for FlatOptimizer
+     * @param net the network to be trained
+     * @param learningRate learning rate
+     */
+    protected FlatOptimizer(Layer net, double learningRate) {
+        this.lr = learningRate;
+
+        List<DoubleMatrix> ws = net.getAllWeights(new ArrayList<DoubleMatrix>());
+        List<DoubleMatrix> gs = net.getAllGradients(new ArrayList<DoubleMatrix>());
+        List<RowSet> rs = net.getAllGradientRows(new ArrayList<RowSet>());
+        if (ws.size() != gs.size() || gs.size() != rs.size())
+            throw new IllegalArgumentException("the numbers of weights, gradients and gradient rows are different");
+
+        this.weights = ws.toArray(new DoubleMatrix[ws.size()]);
+        this.grads = gs.toArray(new DoubleMatrix[gs.size()]);
+        this.gradRows = rs.toArray(new RowSet[rs.size()]);
+        this.offsets = new int[weights.length + 1];
+        this.byRows = new boolean[weights.length];
+        for (int t = 0; t < weights.length; t++) {
+            if (weights[t].length != grads[t].length)
+                throw new IllegalArgumentException("a weight and its gradient have different sizes");
+            if (gradRows[t] != null && gradRows[t].getNumRows() != grads[t].rows)
+                throw new IllegalArgumentException("a gradient and its row set have different numbers of rows");
+            offsets[t + 1] = offsets[t] + weights[t].length;
+        }
+        this.size = offsets[weights.length];
+    }
+
+    /**
+     * Set learning rate.
+     * @param lr a double
+     */
+    public void setLearningRate(double lr) {
+        this.lr = lr;
+    }
+
+    /**
+     * Get learning rate.
+     * @return the learning rate (a double)
+     */
+    public double getLearningRate() {
+        return this.lr;
+    }
+
+    /**
+     * Split large updates over the threads of the common fork-join pool (the default) or not,
+     * e.g. when the optimizer is already run by one of several worker threads.
+     * @param parallel true for splitting updates over threads
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Get the total number of parameters.
+     * @return the number of parameters
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void resetGradients() {
+        forEachSlice(false);
+    }
+
+    @Override
+    public void updateWeights() {
+        step++;
+        prepareStep();
+        forEachSlice(true);
+    }
+
+    /**
+     * Called once before each update, e.g. for computing per-step constants.
+     */
+    protected void prepareStep() { }
+
+    /**
+     * Update a slice of a parameter tensor, and set the gradients of the slice to 0.
+     * @param w the data of the tensor
+     * @param g the data of its gradient
+     * @param from the first element of the slice
+     * @param to the element after the last one
+     * @param base the flat index of w[0], i.e. w[k] has index base + k in the optimizer's state arrays
+     */
+    protected abstract void update(double[] w, double[] g, int from, int to, int base);
+
+    /**
+     * Update the elements offset + idx[i] (i {@literal <} n) of a parameter tensor, and set their gradients to 0.
+     * This is used for the rows of a gradient which may be non-zero (see {@link #skipsZeroGradients()});
+     * child classes may override it with a faster loop.
+     * @param w the data of the tensor
+     * @param g the data of its gradient
+     * @param idx indices, in increasing order
+     * @param n the number of indices
+     * @param offset the offset added to the indices
+     * @param base the flat index of w[0]
+     */
+    protected void update(double[] w, double[] g, int[] idx, int n, int offset, int base) {
+        for (int i = 0; i < n; i++) {
+            int k = offset + idx[i];
+            update(w, g, k, k + 1, base);
+        }
+    }
+
+    /**
+     * @return true if updating a parameter whose gradient is 0 changes neither the parameter nor the state of the
+     * optimizer (e.g. plain SGD, unlike momentum or Adam), so that only the rows of a gradient which may be non-zero
+     * need to be updated
+     */
+    protected boolean skipsZeroGradients() {
+        return false;
+    }
+
+    /**
+     * The (rough) amount of work per parameter of {@link #update}, to decide how many threads are worth it.
+     */
+    protected long costPerParameter() {
+        return 4;
+    }
+
+    /**
+     * Decide whether tensor t is visited row by row, i.e. only at the rows of its gradient which may be non-zero,
+     * rather than as a whole: if these rows are known and less than half of the rows, for zeroing the gradient,
+     * or for updating with an optimizer which skips zero gradients.
+     */
+    boolean visitByRows(int t, boolean update) {
+        RowSet rows = gradRows[t];
+        return (!update || skipsZeroGradients()) && rows != null && !rows.containsAll() && 2L * rows.size() < rows.getNumRows();
+    }
+
+    /**
+     * Run update (or zero the gradients) over the flat index space, in parallel ranges,
+     * and over the rows of the tensors visited row by row. The row sets are then cleared.
+     */
+    void forEachSlice(final boolean update) {
+        long wholeSize = 0;
+        for (int t = 0; t < weights.length; t++) {
+            byRows[t] = visitByRows(t, update);
+            if (!byRows[t])
+                wholeSize += weights[t].length;
+        }
+
+        Parallel.Range body = new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                // find the tensor containing start, then walk over the tensors overlapping [start, end)
+                int t = 0;
+                while (offsets[t + 1] <= start) {
+                    t++;
+                }
+                for (; start < end; t++) {
+                    int base = offsets[t], to = Math.min(end, offsets[t + 1]);
+                    if (byRows[t]) {
+                        // see forEachRow
+                    } else if (update) {
+                        update(weights[t].data, grads[t].data, start - base, to - base, base);
+                    } else {
+                        Arrays.fill(grads[t].data, start - base, to - base, 0);
+                    }
+                    start = to;
+                }
+            }
+        };
+        long cost = (update ? costPerParameter() : 1) * wholeSize / Math.max(size, 1);
+        if (parallel)
+            Parallel.parallelFor(pool, size, cost, body);
+        else if (size > 0)
+            body.run(0, size);
+
+        for (int t = 0; t < weights.length; t++) {
+            if (byRows[t])
+                forEachRow(t, update);
+            if (gradRows[t] != null)
+                gradRows[t].clear();
+        }
+    }
+
+    /**
+     * Run update (or zero the gradient) of tensor t at the rows of its row set.
+     */
+    void forEachRow(final int t, final boolean update) {
+        final double[] w = weights[t].data, g = grads[t].data;
+        final int nRows = grads[t].rows;
+        final int[] rows = gradRows[t].getSortedRows();
+        final int n = gradRows[t].size();
+        if (n == 0)
+            return;
+        Parallel.Range body = new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                // column-major: the rows of column j are at j * nRows + row
+                for (int j = start; j < end; j++) {
+                    int offset = j * nRows;
+                    if (update) {
+                        update(w, g, rows, n, offset, offsets[t]);
+                    } else {
+                        for (int i = 0; i < n; i++) {
+                            g[offset + rows[i]] = 0;
+                        }
+                    }
+                }
+            }
+        };
+        if (parallel)
+            Parallel.parallelFor(pool, grads[t].columns, (update ? costPerParameter() : 1) * n, body);
+        else
+            body.run(0, grads[t].columns);
+    }
+}
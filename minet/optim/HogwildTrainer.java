@@ -0,0 +1,235 @@
+// File: HogwildTrainer.java
+// HogwildTrainer class
+package minet.optim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jblas.DoubleMatrix;
+
+import minet.data.MatrixDataset;
+import minet.eval.Accuracy;
+import minet.layer.Layer;
+import minet.loss.Loss;
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Asynchronous (Hogwild-style) SGD trainer.
+ * Each worker thread has its own replica of the network (see {@link Layer#replicate()}), which shares the weights
+ * with the network but has its own activations and gradients, its own loss, and its own {@link SGD} optimizer.
+ * Workers take mini-batches from a shared dataset (by atomically claiming the next positions of the epoch),
+ * run forward and backward, and apply their updates to the shared weights without any lock,
+ * so they never wait for each other (Niu et al., 2011). Updates can be lost when two workers write the same weight
+ * at the same time. With sparse inputs (see {@link SparseMatrix}), a step updates the first layer's weights only at
+ * the rows of the mini-batch's non-zero features (see {@link FlatOptimizer}), so collisions there are rare;
+ * the biases and the other layers (and all the weights, for dense inputs) are written by every step,
+ * so collisions there are common, and are tolerated by SGD as extra noise.
+ *
+ * For example:
+ * <pre>
+ * HogwildTrainer trainer = new HogwildTrainer(net, new SoftmaxCrossEntropy(), 0.1, 8);
+ * for (int e = 0; e &lt; nEpochs; e++) {
+ *     double loss = trainer.trainEpoch(trainset, false);
+ *     System.out.println(trainer.getSamplesPerSecond());
+ * }
+ * trainer.shutdown();
+ * </pre>
+ * @author Phong Le
+ */
+public class HogwildTrainer {
+
+    Layer net;
+    Layer[] replicas;      // replicas[0] is the network itself
+    Loss[] losses;         // one loss per worker
+    SGD[] optimizers;      // one optimizer per worker, updating the shared weights
+    Accuracy[] accuracies; // the training accuracy of each worker in the current epoch
+    ExecutorService pool;
+    List<Callable<Double>> workers;
+
+    // the current epoch
+    MatrixDataset data;
+    boolean sparse;
+    AtomicInteger cursor = new AtomicInteger();  // the next position of the epoch to be claimed
+    double samplesPerSecond;
+
+    /**
+     * Constructor for HogwildTrainer
+     * @param net the network to be trained
+     * @param loss the loss (each worker uses its own replica of it)
+     * @param learningRate learning rate
+     * @param nThreads the number of worker threads
+     */
+    public HogwildTrainer(Layer net, Loss loss, double learningRate, int nThreads) {
+        if (nThreads < 1)
+            throw new IllegalArgumentException("nThreads must be positive");
+
+        this.net = net;
+        this.replicas = new Layer[nThreads];
+        this.losses = new Loss[nThreads];
+        this.optimizers = new SGD[nThreads];
+        this.accuracies = new Accuracy[nThreads];
+        this.workers = new ArrayList<Callable<Double>>(nThreads);
+        for (int w = 0; w < nThreads; w++) {
+            replicas[w] = w == 0 ? net : net.replicate();
+            losses[w] = loss.replicate();
+            optimizers[w] = new SGD(replicas[w], learningRate);
+            optimizers[w].setParallel(false);  // the workers already use all the threads
+            accuracies[w] = new Accuracy();
+
+            final int worker = w;
+            workers.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return runWorker(worker);
+                }
+            });
+        }
+
+        this.pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "minet-hogwild");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Train the network for one epoch, i.e. one pass over the dataset (which is reset, i.e. shuffled, first).
+     * @param data a training dataset
+     * @param sparse if true, the input features are fed to the network as sparse matrices
+     * @return the sum of the loss values of all the mini-batches
+     * @throws IllegalArgumentException if data has no random access (see {@link MatrixDataset#isRandomAccess()}),
+     * since the threads take the mini-batches by position
+     */
+    public double trainEpoch(MatrixDataset data, boolean sparse) {
+        if (!data.isRandomAccess())
+            throw new IllegalArgumentException("Hogwild training needs a dataset with random access, not a "
+                    + data.getClass().getSimpleName());
+        this.data = data;
+        this.sparse = sparse;
+        data.reset();
+        cursor.set(0);
+        for (Accuracy acc : accuracies) {
+            acc.reset();
+        }
+
+        long start = System.nanoTime();
+        double totalLoss = 0;
+        try {
+            for (Future<Double> f : pool.invokeAll(workers)) {
+                totalLoss += f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        samplesPerSecond = data.getSize() / ((System.nanoTime() - start) / 1e9);
+        return totalLoss;
+    }
+
+    /**
+     * The loop of a worker: claim the next mini-batch of the epoch, train on it, until the epoch is finished.
+     * @return the sum of the loss values of the worker's mini-batches
+     */
+    double runWorker(int w) {
+        Layer replica = replicas[w];
+        Loss loss = losses[w];
+        SGD optimizer = optimizers[w];
+        Accuracy accuracy = accuracies[w];
+        int size = data.getSize(), batchsize = data.getBatchSize();
+        Pair<DoubleMatrix, DoubleMatrix> denseBuffer = null;
+        Pair<SparseMatrix, DoubleMatrix> sparseBuffer = null;
+
+        double totalLoss = 0;
+        while (true) {
+            int start = cursor.getAndAdd(batchsize);
+            if (start >= size)
+                break;
+            int end = Math.min(start + batchsize, size);
+
+            Object X;
+            DoubleMatrix Y;
+            if (sparse) {
+                sparseBuffer = data.getSparseMiniBatch(start, end, sparseBuffer);
+                X = sparseBuffer.first;
+                Y = sparseBuffer.second;
+            } else {
+                denseBuffer = data.getMiniBatch(start, end, denseBuffer);
+                X = denseBuffer.first;
+                Y = denseBuffer.second;
+            }
+
+            optimizer.resetGradients();
+            DoubleMatrix Yhat = replica.forward(X);
+            totalLoss += loss.forward(Y, Yhat);
+            accuracy.update(Y, Yhat);
+            replica.backward(loss.backward());
+            // no lock: the shared weights are updated in place
+            optimizer.updateWeights();
+        }
+        return totalLoss;
+    }
+
+    /**
+     * Get the training throughput of the last epoch.
+     * @return the number of samples per second
+     */
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    /**
+     * Get the training accuracy of the last epoch, computed from the outputs of the training steps
+     * (while the weights change).
+     * @return the accuracy (in [0, 1])
+     */
+    public double getTrainingAccuracy() {
+        Accuracy total = new Accuracy();
+        for (Accuracy acc : accuracies) {
+            total.merge(acc);
+        }
+        return total.getValue();
+    }
+
+    /**
+     * Set the learning rate of all the workers.
+     * @param lr a double
+     */
+    public void setLearningRate(double lr) {
+        for (SGD optimizer : optimizers) {
+            optimizer.setLearningRate(lr);
+        }
+    }
+
+    /**
+     * Get the number of worker threads.
+     * @return the number of worker threads
+     */
+    public int getNumThreads() {
+        return replicas.length;
+    }
+
+    /**
+     * Stop the worker threads. The trainer must not be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HogwildTrainer: %d threads\n", replicas.length) + net.toString();
+    }
+}
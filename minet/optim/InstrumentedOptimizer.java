@@ -0,0 +1,46 @@
+// File: InstrumentedOptimizer.java
+// InstrumentedOptimizer class
+package minet.optim;
+
+import minet.metrics.Metrics;
+import minet.metrics.Timer;
+
+/**
+ * An optimizer recording the wall time and the allocated bytes of the steps of another optimizer,
+ * in the timers {@code "optimizer reset"} and {@code "optimizer update"} (see {@link Metrics}).
+ * @author Phong Le
+ */
+public class InstrumentedOptimizer implements Optimizer {
+
+    Optimizer optimizer;
+    Timer resetTimer;
+    Timer updateTimer;
+
+    /**
+     * @param optimizer the optimizer to be instrumented
+     */
+    public InstrumentedOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        this.resetTimer = Metrics.timer("optimizer reset");
+        this.updateTimer = Metrics.timer("optimizer update");
+    }
+
+    @Override
+    public void resetGradients() {
+        Timer.Span span = resetTimer.start();
+        optimizer.resetGradients();
+        resetTimer.stop(span, 0);
+    }
+
+    @Override
+    public void updateWeights() {
+        Timer.Span span = updateTimer.start();
+        optimizer.updateWeights();
+        updateTimer.stop(span, 0);
+    }
+
+    @Override
+    public String toString() {
+        return optimizer.toString();
+    }
+}
@@ -6,10 +6,11 @@ package minet.optim;
 import org.jblas.DoubleMatrix;
 
 /**
- * An interface of optimizers (e.g. {@link SGD}).
+ * An interface of optimizers (e.g. {@link SGD}, {@link Adam}, {@link AdamW}).
  * An optimizer object contains:
  * 1) a list of weight matrices and bias vectors, and
  * 2) a list of their gradients.
+ * See {@link FlatOptimizer} for optimizers updating all of them in a single pass.
  * @author Phong Le
  */
 public interface Optimizer {
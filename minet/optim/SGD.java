@@ -3,64 +3,84 @@
 package minet.optim;
 
 import minet.layer.Layer;
-import org.jblas.DoubleMatrix;
-
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 
 
 /**
- * SGD (stochastic gradient descent) class
+ * SGD (stochastic gradient descent) class, optionally with momentum or Nesterov momentum:
+ * {@literal v = momentum * v + g}, then {@literal w = w - lr * v}
+ * (or {@literal w = w - lr * (g + momentum * v)} for Nesterov).
  * @author Phong Le
  */
-public class SGD implements Optimizer {
-    List<DoubleMatrix> weights;
-    List<DoubleMatrix> grads;
-    double lr;
+public class SGD extends FlatOptimizer {
+    double momentum;
+    boolean nesterov;
+    double[] velocity;  // null if momentum is 0
 
     public SGD(Layer net, double learningRate) {
-        this.lr = learningRate;
-
-        this.weights = new LinkedList<DoubleMatrix>();
-        this.grads = new LinkedList<DoubleMatrix>();
-        net.getAllWeights(this.weights);
-        net.getAllGradients(this.grads);
+        this(net, learningRate, 0, false);
     }
 
     /**
-     * Set learning rate.
-     * @param lr a double
+     * Constructor for SGD with momentum
+     * @param net the network to be trained
+     * @param learningRate learning rate
+     * @param momentum momentum factor (e.g. 0.9), 0 for plain SGD
+     * @param nesterov if true, use Nesterov momentum
      */
-    public void setLearningRate(double lr) {
-        this.lr = lr;
+    public SGD(Layer net, double learningRate, double momentum, boolean nesterov) {
+        super(net, learningRate);
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+        if (momentum != 0)
+            this.velocity = new double[getSize()];
     }
 
-    /**
-     * Get learning rate.
-     * @return the learning rate (a double)
-     */
-    public double getLearningRate() {
-        return this.lr;
+    @Override
+    protected void update(double[] w, double[] g, int from, int to, int base) {
+        double lr = this.lr, mu = this.momentum;
+        if (velocity == null) {
+            for (int k = from; k < to; k++) {
+                w[k] -= lr * g[k];
+                g[k] = 0;
+            }
+        } else {
+            double[] v = velocity;
+            for (int k = from, i = base + from; k < to; k++, i++) {
+                double vk = mu * v[i] + g[k];
+                v[i] = vk;
+                w[k] -= lr * (nesterov ? g[k] + mu * vk : vk);
+                g[k] = 0;
+            }
+        }
     }
 
     @Override
-    public void resetGradients() {
-        ListIterator<DoubleMatrix> gIter = this.grads.listIterator();
-        while (gIter.hasNext()) {
-            DoubleMatrix g = gIter.next();
-            g.fill(0);
+    protected void update(double[] w, double[] g, int[] idx, int n, int offset, int base) {
+        if (velocity != null) {
+            super.update(w, g, idx, n, offset, base);
+            return;
+        }
+        double lr = this.lr;
+        for (int i = 0; i < n; i++) {
+            int k = offset + idx[i];
+            w[k] -= lr * g[k];
+            g[k] = 0;
         }
     }
 
+    /**
+     * @return true without momentum: then only the rows of the gradients which may be non-zero are updated
+     * (e.g. the rows of the non-zero features of a sparse input)
+     */
     @Override
-    public void updateWeights() {
-        ListIterator<DoubleMatrix> wIter = this.weights.listIterator();
-        ListIterator<DoubleMatrix> gIter = this.grads.listIterator();
-        while (gIter.hasNext() && wIter.hasNext()) {
-            DoubleMatrix w = wIter.next();
-            DoubleMatrix g = gIter.next();
-            w.addi(g.mul(-this.lr));
-        }
+    protected boolean skipsZeroGradients() {
+        return velocity == null;
+    }
+
+    @Override
+    public String toString() {
+        if (velocity == null)
+            return String.format("SGD: lr %g", lr);
+        return String.format("SGD: lr %g, momentum %g%s", lr, momentum, nesterov ? " (Nesterov)" : "");
     }
 }
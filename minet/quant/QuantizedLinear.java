@@ -0,0 +1,228 @@
+// File: QuantizedLinear.java
+// QuantizedLinear layer
+package minet.quant;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jblas.DoubleMatrix;
+
+import minet.layer.Layer;
+import minet.util.Parallel;
+import minet.util.RowSet;
+import minet.util.SparseMatrix;
+import minet.util.Workspace;
+
+/**
+ * An inference-only linear layer (Y = XW + b, optionally followed by a ReLU) with 8-bit integer weights
+ * and activations, created from a trained {@link minet.layer.Linear} layer by {@link Quantizer}.
+ *
+ * The weights are quantized symmetrically per output channel: {@literal W[k,j] ~ wScale[j] * Wq[k,j]},
+ * with Wq in [-127, 127] and wScale[j] = max_k |W[k,j]| / 127. The input is quantized with a single scale,
+ * xScale = (calibrated max |X|) / 127, values outside the calibrated range being clipped. The products are
+ * accumulated in 32-bit integers (which cannot overflow for up to 133144 inputs), the bias is added in the same integer domain and the ReLU is applied to the
+ * integer sum, so that each output is converted back to a double with a single multiplication:
+ * {@literal Y[i,j] = xScale * wScale[j] * (sum_k Xq[i,k] * Wq[k,j] + bq[j])}.
+ *
+ * The weights take 1 byte instead of 8 per value. Input and output stay DoubleMatrix,
+ * so that quantized layers can be mixed with the other layers of a {@link minet.layer.Sequential}.
+ * backward is not supported.
+ *
+ * @author Phong Le
+ */
+public class QuantizedLinear implements Layer, java.io.Serializable {
+
+    private static final long serialVersionUID = 4427085186346911630L;
+
+    static final int QMAX = 127;
+
+    // accumulators of the products, one buffer per thread
+    static final ThreadLocal<int[]> accBuffers = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[0];
+        }
+    };
+
+    int inDims, outDims;
+    byte[] Wq;          // quantized weights, row-major [input_dims x output_dims] (the weights of input k are contiguous)
+    int[] bq;           // quantized bias, in units of xScale * wScale[j] (added to the products in a long)
+    double[] wScale;    // scale of each output channel
+    double xScale;      // scale of the input
+    double[] outScale;  // xScale * wScale[j]
+    boolean relu;       // if true, the output is max(0, XW + b)
+
+    // workspaces, reused from mini-batch to mini-batch
+    transient DoubleMatrix Y;    // output
+    transient DoubleMatrix Xd;   // dense copy of a sparse input
+
+    /**
+     * Quantize a linear layer.
+     * @param W a [input_dims x output_dims] weight matrix
+     * @param b a bias vector of output_dims values
+     * @param inputMaxAbs the largest absolute value of the input expected (e.g. measured on a calibration set)
+     * @param relu if true, the layer is followed by a ReLU
+     * @throws IllegalArgumentException if input_dims is so large that the products could overflow 32-bit integers
+     */
+    public QuantizedLinear(DoubleMatrix W, DoubleMatrix b, double inputMaxAbs, boolean relu) {
+        if ((long)W.rows * QMAX * QMAX > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(String.format(
+                    "%d inputs: the sum of the products could overflow 32-bit integers", W.rows));
+        this.inDims = W.rows;
+        this.outDims = W.columns;
+        this.relu = relu;
+        this.xScale = inputMaxAbs > 0 ? inputMaxAbs / QMAX : 1;
+        this.Wq = new byte[inDims * outDims];
+        this.bq = new int[outDims];
+        this.wScale = new double[outDims];
+        this.outScale = new double[outDims];
+
+        for (int j = 0; j < outDims; j++) {
+            // W is column-major, so column j (the weights of output channel j) is contiguous
+            int offset = j * inDims;
+            double maxAbs = 0;
+            for (int k = offset; k < offset + inDims; k++) {
+                maxAbs = Math.max(maxAbs, Math.abs(W.data[k]));
+            }
+            wScale[j] = maxAbs > 0 ? maxAbs / QMAX : 1;
+            for (int k = 0; k < inDims; k++) {
+                Wq[k * outDims + j] = (byte)quantize(W.data[offset + k], wScale[j]);
+            }
+            outScale[j] = xScale * wScale[j];
+            double q = Math.rint(b.data[j] / outScale[j]);
+            bq[j] = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, q));
+        }
+    }
+
+    /**
+     * Share the quantized weights of another layer.
+     */
+    QuantizedLinear(QuantizedLinear other) {
+        this.inDims = other.inDims;
+        this.outDims = other.outDims;
+        this.Wq = other.Wq;
+        this.bq = other.bq;
+        this.wScale = other.wScale;
+        this.xScale = other.xScale;
+        this.outScale = other.outScale;
+        this.relu = other.relu;
+    }
+
+    /**
+     * @return round(x / scale), clipped to [-QMAX, QMAX]
+     */
+    static int quantize(double x, double scale) {
+        double q = Math.rint(x / scale);
+        return q > QMAX ? QMAX : q < -QMAX ? -QMAX : (int)q;
+    }
+
+    @Override
+    public DoubleMatrix forward(Object input) {
+        final DoubleMatrix X;
+        if (input instanceof SparseMatrix)
+            X = Xd = ((SparseMatrix)input).toDense(Xd);
+        else
+            X = (DoubleMatrix)input;
+        final DoubleMatrix Y = this.Y = Workspace.get(this.Y, X.rows, outDims);
+
+        Parallel.parallelFor(ForkJoinPool.commonPool(), X.rows, (long) inDims * outDims, new Parallel.Range() {
+            @Override
+            public void run(int start, int end) {
+                int[] acc = accBuffers.get();
+                if (acc.length < outDims) {
+                    acc = new int[outDims];
+                    accBuffers.set(acc);
+                }
+                multiply(X, start, end, Y, acc);
+            }
+        });
+        return Y;
+    }
+
+    /**
+     * Compute the rows [i0, i1) of Y. Each input value is quantized on the fly, and the row of Wq it multiplies
+     * is added to the accumulators, unless the quantized value is 0 (which is frequent, e.g. after a ReLU).
+     * The products of a row, at most inDims * 127 * 127 in absolute value, fit in 32-bit integers (see the constructor);
+     * the bias is added to them in a long.
+     * @param acc a workspace of (at least) outDims values
+     */
+    void multiply(DoubleMatrix X, int i0, int i1, DoubleMatrix Y, int[] acc) {
+        double[] x = X.data, y = Y.data;
+        byte[] wq = Wq;
+        int n = X.rows, m = outDims;
+        double inv = 1 / xScale;
+        for (int i = i0; i < i1; i++) {
+            for (int j = 0; j < m; j++) {
+                acc[j] = 0;
+            }
+            // X is column-major: X[i,k] is at i + k * n
+            for (int k = 0, p = i; k < inDims; k++, p += n) {
+                double v = Math.rint(x[p] * inv);
+                int xq = v > QMAX ? QMAX : v < -QMAX ? -QMAX : (int)v;
+                if (xq == 0)
+                    continue;
+                for (int j = 0, q = k * m; j < m; j++, q++) {
+                    acc[j] += xq * wq[q];
+                }
+            }
+            // fused ReLU and rescaling
+            for (int j = 0, o = i; j < m; j++, o += n) {
+                long z = acc[j] + (long)bq[j];
+                y[o] = relu && z <= 0 ? 0 : z * outScale[j];
+            }
+        }
+    }
+
+    @Override
+    public DoubleMatrix backward(DoubleMatrix gY) {
+        throw new UnsupportedOperationException("backward is not supported by quantized layers");
+    }
+
+    @Override
+    public List<DoubleMatrix> getAllWeights(List<DoubleMatrix> weights) {
+        // the quantized weights are not trainable
+        return weights;
+    }
+
+    @Override
+    public List<DoubleMatrix> getAllGradients(List<DoubleMatrix> grads) {
+        return grads;
+    }
+
+    @Override
+    public List<RowSet> getAllGradientRows(List<RowSet> rows) {
+        return rows;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new QuantizedLinear(this);
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        // always in evaluation mode
+    }
+
+    @Override
+    public boolean isTraining() {
+        return false;
+    }
+
+    @Override
+    public void releaseWorkspaces() {
+        Y = Xd = null;
+    }
+
+    /**
+     * @return the number of bytes taken by the parameters (weights, bias and scales)
+     */
+    public long getSizeInBytes() {
+        return Wq.length + 4L * bq.length + 8L * (wScale.length + outScale.length) + 8;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QuantizedLinear%s: %d in, %d out", relu ? "ReLU" : "", inDims, outDims);
+    }
+}
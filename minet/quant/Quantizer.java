@@ -0,0 +1,238 @@
+// File: Quantizer.java
+// Quantizer class
+package minet.quant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import minet.backend.Backends;
+import minet.data.MatrixDataset;
+import minet.layer.DataParallel;
+import minet.layer.Layer;
+import minet.layer.Linear;
+import minet.layer.LinearReLU;
+import minet.layer.LinearSigmoid;
+import minet.layer.LinearTanh;
+import minet.layer.ReLU;
+import minet.layer.Sequential;
+import minet.layer.Sigmoid;
+import minet.layer.Tanh;
+import minet.util.Pair;
+import minet.util.SparseMatrix;
+
+/**
+ * Post-training quantization: turns a trained network into an inference-only network
+ * in which every linear layer is replaced by a {@link QuantizedLinear} layer (8-bit weights and activations).
+ * <pre>
+ * Sequential qnet = Quantizer.quantize(net, traindata, false, 1000);
+ * Quantizer.Report report = Quantizer.compare(net, qnet, testdata, false);
+ * System.out.println(report);
+ * </pre>
+ * The scale of the input of each linear layer is calibrated by running the float network on some samples
+ * of a dataset and taking the largest absolute value seen. Nested {@link Sequential} containers are flattened;
+ * a Linear layer followed by a ReLU layer, or a {@link LinearReLU} layer, becomes a single quantized layer with a
+ * fused ReLU, and {@link LinearSigmoid} and {@link LinearTanh} layers become a quantized layer followed by
+ * the activation layer. The other layers (e.g. Softmax) are replicated.
+ *
+ * @author Phong Le
+ */
+public class Quantizer {
+
+    /**
+     * Quantize a network.
+     * @param net the trained network, made of linear layers, activation layers and Sequential containers
+     * @param calibration the dataset from which calibration samples are taken (it is reset before and after)
+     * @param sparse if true, the input features are fed to the network as sparse matrices
+     * @param nSamples the number of calibration samples (the first mini-batches of an epoch)
+     * @return the quantized network
+     */
+    public static Sequential quantize(Layer net, MatrixDataset calibration, boolean sparse, int nSamples) {
+        List<Layer> layers = flatten(net, new ArrayList<Layer>());
+        double[] maxAbs = calibrate(layers, calibration, sparse, nSamples);
+
+        List<Layer> qlayers = new ArrayList<Layer>();
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (!(layer instanceof Linear)) {
+                Layer replica = layer.replicate();
+                replica.setTraining(false);
+                qlayers.add(replica);
+                continue;
+            }
+
+            List<DoubleMatrix> weights = layer.getAllWeights(new ArrayList<DoubleMatrix>());
+            double inputMaxAbs = maxAbs[i];
+            boolean relu = layer instanceof LinearReLU;
+            if (layer.getClass() == Linear.class && i + 1 < layers.size() && layers.get(i + 1) instanceof ReLU) {
+                relu = true;
+                i++;
+            }
+            qlayers.add(new QuantizedLinear(weights.get(0), weights.get(1), inputMaxAbs, relu));
+            if (layer instanceof LinearSigmoid)
+                qlayers.add(new Sigmoid());
+            else if (layer instanceof LinearTanh)
+                qlayers.add(new Tanh());
+        }
+
+        Sequential qnet = new Sequential(qlayers.toArray(new Layer[qlayers.size()]));
+        qnet.setTraining(false);
+        return qnet;
+    }
+
+    /**
+     * Put the layers of a network into a list, replacing containers by their layers.
+     */
+    static List<Layer> flatten(Layer net, List<Layer> layers) {
+        if (net instanceof DataParallel) {
+            flatten(((DataParallel)net).getNetwork(), layers);
+        } else if (net instanceof Sequential) {
+            Sequential seq = (Sequential)net;
+            for (int i = 0; i < seq.size(); i++) {
+                flatten(seq.getLayer(i), layers);
+            }
+        } else {
+            layers.add(net);
+        }
+        return layers;
+    }
+
+    /**
+     * Run the float layers on the calibration samples (in evaluation mode, then back in their previous mode).
+     * @return for each linear layer, the largest absolute value of its input (0 for the other layers)
+     */
+    static double[] calibrate(List<Layer> layers, MatrixDataset data, boolean sparse, int nSamples) {
+        double[] maxAbs = new double[layers.size()];
+        boolean[] training = new boolean[layers.size()];
+        for (int i = 0; i < layers.size(); i++) {
+            training[i] = layers.get(i).isTraining();
+            layers.get(i).setTraining(false);
+        }
+        data.reset();
+        try {
+            for (int seen = 0; seen < nSamples; ) {
+                Pair<?, DoubleMatrix> batch = sparse ? data.getNextSparseMiniBatch() : data.getNextMiniBatch();
+                if (batch == null)
+                    break;
+                Object X = batch.first;
+                for (int i = 0; i < layers.size(); i++) {
+                    if (layers.get(i) instanceof Linear)
+                        maxAbs[i] = Math.max(maxAbs[i], maxAbs(X));
+                    X = layers.get(i).forward(X);
+                }
+                seen += batch.second.rows;
+            }
+        } finally {
+            for (int i = 0; i < layers.size(); i++) {
+                layers.get(i).setTraining(training[i]);
+            }
+            data.reset();
+        }
+        return maxAbs;
+    }
+
+    static double maxAbs(Object X) {
+        double[] values;
+        int length;
+        if (X instanceof SparseMatrix) {
+            values = ((SparseMatrix)X).values;
+            length = ((SparseMatrix)X).nnz;
+        } else {
+            values = ((DoubleMatrix)X).data;
+            length = ((DoubleMatrix)X).length;
+        }
+        double max = 0;
+        for (int k = 0; k < length; k++) {
+            max = Math.max(max, Math.abs(values[k]));
+        }
+        return max;
+    }
+
+    /**
+     * Compare a float network with its quantized version on a dataset.
+     * The float network is run in evaluation mode, then put back in its previous mode.
+     * @param net the float network
+     * @param qnet the quantized network (see {@link #quantize})
+     * @param data the dataset (it is reset before and after)
+     * @param sparse if true, the input features are fed to the networks as sparse matrices
+     * @return the accuracies of both networks, how often they agree, and their sizes
+     */
+    public static Report compare(Layer net, Layer qnet, MatrixDataset data, boolean sparse) {
+        Report report = new Report();
+        long correct = 0, qcorrect = 0, agree = 0;
+        int[] preds = new int[0], qpreds = new int[0];
+        boolean training = net.isTraining();
+        net.setTraining(false);
+        data.reset();
+        try {
+            while (true) {
+                Pair<?, DoubleMatrix> batch = sparse ? data.getNextSparseMiniBatch() : data.getNextMiniBatch();
+                if (batch == null)
+                    break;
+                DoubleMatrix Y = batch.second;
+                if (preds.length < Y.rows) {
+                    preds = new int[Y.rows];
+                    qpreds = new int[Y.rows];
+                }
+                Backends.get().rowArgmaxs(net.forward(batch.first), preds);
+                Backends.get().rowArgmaxs(qnet.forward(batch.first), qpreds);
+                for (int i = 0; i < Y.rows; i++) {
+                    int label = (int)Y.data[i];
+                    correct += preds[i] == label ? 1 : 0;
+                    qcorrect += qpreds[i] == label ? 1 : 0;
+                    agree += preds[i] == qpreds[i] ? 1 : 0;
+                }
+                report.nSamples += Y.rows;
+            }
+        } finally {
+            net.setTraining(training);
+            data.reset();
+        }
+
+        int n = Math.max(report.nSamples, 1);
+        report.accuracy = (double)correct / n;
+        report.quantizedAccuracy = (double)qcorrect / n;
+        report.agreement = (double)agree / n;
+        report.bytes = getSizeInBytes(net);
+        report.quantizedBytes = getSizeInBytes(qnet);
+        return report;
+    }
+
+    /**
+     * @return the number of bytes taken by the parameters of a network (8 per double)
+     */
+    public static long getSizeInBytes(Layer net) {
+        long bytes = 0;
+        for (Layer layer : flatten(net, new ArrayList<Layer>())) {
+            if (layer instanceof QuantizedLinear) {
+                bytes += ((QuantizedLinear)layer).getSizeInBytes();
+            } else {
+                for (DoubleMatrix W : layer.getAllWeights(new ArrayList<DoubleMatrix>())) {
+                    bytes += 8L * W.length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The result of {@link Quantizer#compare}.
+     */
+    public static class Report {
+        public int nSamples;             // number of samples compared
+        public double accuracy;          // accuracy of the float network
+        public double quantizedAccuracy; // accuracy of the quantized network
+        public double agreement;         // proportion of samples on which both networks predict the same label
+        public long bytes;               // size of the parameters of the float network
+        public long quantizedBytes;      // size of the parameters of the quantized network
+
+        @Override
+        public String toString() {
+            return String.format("float accuracy: %.4f\tint8 accuracy: %.4f (%+.4f)\tagreement: %.4f\t"
+                    + "size: %d -> %d bytes (%.1fx smaller)", accuracy, quantizedAccuracy,
+                    quantizedAccuracy - accuracy, agreement, bytes, quantizedBytes,
+                    (double)bytes / Math.max(quantizedBytes, 1));
+        }
+    }
+}
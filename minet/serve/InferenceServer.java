@@ -0,0 +1,186 @@
+// File: InferenceServer.java
+// InferenceServer class
+package minet.serve;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import minet.layer.Layer;
+import minet.layer.ModelFile;
+
+/**
+ * An embedded HTTP inference service on localhost, for requests carrying one instance each.
+ * The requests are grouped into mini-batches by a {@link MicroBatcher}.
+ * <pre>
+ * POST /predict   body: the input features, separated by spaces or commas
+ *                 response: {"label": argmax of the output, "output": [the output of the network]}
+ * GET  /stats     response: {"requests": ..., "batches": ..., "meanBatchSize": ...}
+ * </pre>
+ * Each connection is handled on a virtual thread if the JVM has them (Java 21+), otherwise on a thread
+ * of a cached pool; either way, handlers only parse, wait for their result and reply, the network runs
+ * on the batcher's thread.
+ * It can be started from a model file (see {@link ModelFile}):
+ * <pre>
+ * java minet.serve.InferenceServer model.bin 784 8080 64 2000
+ * </pre>
+ * @author Phong Le
+ */
+public class InferenceServer {
+
+    final MicroBatcher batcher;
+    final HttpServer server;
+    final ExecutorService executor;
+
+    /**
+     * Start a server.
+     * @param net the network
+     * @param inputDims the number of input features
+     * @param port the port, on the loopback address (0 for any free port)
+     * @param maxBatchSize the maximum number of requests per batch
+     * @param maxWaitMicros the batching window (see {@link MicroBatcher})
+     */
+    public InferenceServer(Layer net, int inputDims, int port, int maxBatchSize, long maxWaitMicros)
+            throws IOException {
+        this.batcher = new MicroBatcher(net, inputDims, maxBatchSize, maxWaitMicros);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newConnectionExecutor();
+        server.setExecutor(executor);
+        server.createContext("/predict", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                predict(exchange);
+            }
+        });
+        server.createContext("/stats", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                reply(exchange, 200, String.format("{\"requests\": %d, \"batches\": %d, \"meanBatchSize\": %.2f}",
+                        batcher.getRequestCount(), batcher.getBatchCount(), batcher.getMeanBatchSize()));
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * A virtual-thread-per-task executor if available (looked up by reflection,
+     * so that the library still runs on older JVMs), otherwise a cached thread pool.
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void predict(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            reply(exchange, 405, error("POST expected"));
+            return;
+        }
+        double[] input;
+        try {
+            String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8).trim();
+            String[] ss = body.split("[\\s,]+");
+            input = new double[body.isEmpty() ? 0 : ss.length];
+            for (int j = 0; j < input.length; j++) {
+                input[j] = Double.parseDouble(ss[j]);
+            }
+            double[] output = batcher.submit(input).get();
+
+            int label = 0;
+            StringBuilder str = new StringBuilder();
+            for (int j = 0; j < output.length; j++) {
+                if (output[j] > output[label])
+                    label = j;
+                str.append(j == 0 ? "" : ", ").append(output[j]);
+            }
+            reply(exchange, 200, "{\"label\": " + label + ", \"output\": [" + str + "]}");
+        } catch (IllegalArgumentException e) {  // also NumberFormatException
+            reply(exchange, 400, error(String.valueOf(e.getMessage())));
+        } catch (IllegalStateException e) {  // the batcher is shut down
+            reply(exchange, 503, error(String.valueOf(e.getMessage())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply(exchange, 503, error("interrupted"));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException)
+                reply(exchange, 503, error(String.valueOf(e.getCause().getMessage())));
+            else
+                reply(exchange, 500, error(String.valueOf(e.getCause())));
+        }
+    }
+
+    static String error(String message) {
+        return "{\"error\": \"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    static void reply(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the batcher of the server
+     */
+    public MicroBatcher getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * Stop the server and its batcher.
+     */
+    public void stop() {
+        server.stop(0);
+        batcher.shutdown();
+        executor.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java minet.serve.InferenceServer <modelfile> <inputdims> <port> "
+                    + "[max batch size (default 64)] [batching window in microseconds (default 1000)]");
+            return;
+        }
+        Layer net = ModelFile.load(args[0]);
+        int maxBatchSize = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        long maxWaitMicros = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+        InferenceServer server = new InferenceServer(net, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                maxBatchSize, maxWaitMicros);
+        System.out.printf("serving on http://localhost:%d/predict (%s)\n", server.getPort(), server.batcher);
+    }
+}
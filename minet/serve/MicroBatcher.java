@@ -0,0 +1,199 @@
+// File: MicroBatcher.java
+// MicroBatcher class
+package minet.serve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jblas.DoubleMatrix;
+
+import minet.layer.Layer;
+import minet.util.Workspace;
+
+/**
+ * Groups single-instance inference requests into mini-batches, so that the network computes matrix-matrix
+ * rather than vector-matrix products. Requests ({@link #submit(double[])}) are queued; a worker thread takes
+ * the first waiting request, then waits for more until the batch has maxBatchSize requests or maxWaitMicros
+ * microseconds have passed since the first one was taken, runs one forward pass on the whole batch, and completes
+ * the request of each row with its output.
+ *
+ * The batching window trades latency for throughput: with a window of 0, a batch only contains
+ * the requests already waiting (e.g. those queued while the previous batch was being computed).
+ * The network is only used by the worker thread, in evaluation mode.
+ *
+ * @author Phong Le
+ */
+public class MicroBatcher {
+
+    /**
+     * A queued request.
+     */
+    static class Request {
+        final double[] input;
+        final CompletableFuture<double[]> output = new CompletableFuture<double[]>();
+
+        Request(double[] input) {
+            this.input = input;
+        }
+    }
+
+    final Layer net;
+    final int inputDims;
+    final int maxBatchSize;
+    final long maxWaitNanos;
+    final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    final Thread worker;
+    volatile boolean running = true;
+
+    // statistics
+    final AtomicLong nRequests = new AtomicLong();
+    final AtomicLong nBatches = new AtomicLong();
+
+    /**
+     * @param net the network (set to evaluation mode)
+     * @param inputDims the number of input features
+     * @param maxBatchSize the maximum number of requests per batch
+     * @param maxWaitMicros the batching window: how long to wait for more requests once a request is taken
+     */
+    public MicroBatcher(Layer net, int inputDims, int maxBatchSize, long maxWaitMicros) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        if (maxWaitMicros < 0)
+            throw new IllegalArgumentException("maxWaitMicros must not be negative");
+        this.net = net;
+        this.inputDims = inputDims;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        net.setTraining(false);
+
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "minet-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue an instance.
+     * @param input the input features (inputDims values)
+     * @return the future output of the network for this instance
+     * (failing with an IllegalStateException if the batcher is shut down before computing it)
+     * @throws IllegalStateException if the batcher is shut down
+     */
+    public CompletableFuture<double[]> submit(double[] input) {
+        if (input.length != inputDims)
+            throw new IllegalArgumentException("expected " + inputDims + " features, got " + input.length);
+        if (!running)
+            throw new IllegalStateException("the batcher is shut down");
+        Request request = new Request(input);
+        queue.add(request);
+        // if shutdown happened in the meantime, the worker may have drained the queue already:
+        // a request still in the queue is failed here, one taken by the worker is completed by it
+        if (!running && queue.remove(request))
+            request.output.completeExceptionally(new IllegalStateException("the batcher is shut down"));
+        return request.output;
+    }
+
+    void loop() {
+        List<Request> batch = new ArrayList<Request>(maxBatchSize);
+        DoubleMatrix X = null;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // take what is already there, then wait for the rest of the window
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0)
+                        continue;
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0)
+                        break;
+                    Request r = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (r == null)
+                        break;
+                    batch.add(r);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                int n = batch.size();
+                X = Workspace.get(X, n, inputDims);
+                for (int i = 0; i < n; i++) {
+                    double[] x = batch.get(i).input;
+                    for (int j = 0; j < inputDims; j++) {
+                        X.data[i + j * n] = x[j];
+                    }
+                }
+                DoubleMatrix Y = net.forward(X);
+                nBatches.incrementAndGet();
+                nRequests.addAndGet(n);
+                for (int i = 0; i < n; i++) {
+                    double[] y = new double[Y.columns];
+                    for (int j = 0; j < y.length; j++) {
+                        y[j] = Y.data[i + j * n];
+                    }
+                    batch.get(i).output.complete(y);
+                }
+            } catch (RuntimeException e) {
+                for (Request r : batch) {
+                    r.output.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+
+        // fail the requests left behind
+        for (Request r : batch) {
+            r.output.completeExceptionally(new IllegalStateException("the batcher is shut down"));
+        }
+        Request r;
+        while ((r = queue.poll()) != null) {
+            r.output.completeExceptionally(new IllegalStateException("the batcher is shut down"));
+        }
+    }
+
+    /**
+     * Stop the worker thread. Queued requests fail.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * @return the number of requests processed so far
+     */
+    public long getRequestCount() {
+        return nRequests.get();
+    }
+
+    /**
+     * @return the number of batches processed so far
+     */
+    public long getBatchCount() {
+        return nBatches.get();
+    }
+
+    /**
+     * @return the mean number of requests per batch
+     */
+    public double getMeanBatchSize() {
+        long b = nBatches.get();
+        return b == 0 ? 0 : (double)nRequests.get() / b;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MicroBatcher: max batch size %d, window %d us", maxBatchSize, maxWaitNanos / 1000);
+    }
+}
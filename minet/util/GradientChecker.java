@@ -7,6 +7,7 @@ import minet.layer.init.*;
 import minet.loss.CrossEntropy;
 import minet.loss.Loss;
 import minet.loss.MeanSquaredError;
+import minet.loss.SoftmaxCrossEntropy;
 
 import org.jblas.DoubleMatrix;
 
@@ -93,10 +94,89 @@ public class GradientChecker {
         checkGradient(net, loss, X, Y);
     }
 
+    /**
+     * Create a classification test with fused layers and loss.
+     */
+    public static void testFusedClasification() {
+        DoubleMatrix X = new DoubleMatrix(
+                new double[][] {
+                        {.1f, .1f, .1f, .6f, .1f},
+                        {.5f, .1f, .2f, .1f, .1f},
+                        {.1f, .2f, .2f, .1f, .4f}});
+        DoubleMatrix Y = new DoubleMatrix(new double[] {2., 0., 1.});
+        Sequential net = new Sequential(new Layer[] {
+                new LinearSigmoid(5, 10, new WeightInitUniform(-1, 1)),
+                new LinearTanh(10, 20, new WeightInitUniform(-1, 1)),
+                new LinearReLU(20, 15, new WeightInitUniform(-1, 1)),
+                new Linear(15, 6, new WeightInitUniform(-1, 1))});
+        SoftmaxCrossEntropy loss = new SoftmaxCrossEntropy();
+
+        System.out.println(net);
+        System.out.println(loss);
+        checkGradient(net, loss, X, Y);
+    }
+
+    /**
+     * Create a classification test with sparse input.
+     */
+    public static void testSparseClasification() {
+        DoubleMatrix X = new DoubleMatrix(
+                new double[][] {
+                        {0, .3f, 0, 0, .6f, 0, 0, 0},
+                        {.5f, 0, 0, 0, 0, 0, .2f, 0},
+                        {0, 0, 0, 0, 0, 0, 0, 0},
+                        {0, 0, .4f, .1f, 0, 0, 0, .9f}});
+        DoubleMatrix Y = new DoubleMatrix(new double[] {2., 0., 1., 3.});
+        Sequential net = new Sequential(new Layer[] {
+                new LinearTanh(8, 10, new WeightInitUniform(-1, 1)),
+                new Linear(10, 4, new WeightInitUniform(-1, 1))});
+        SoftmaxCrossEntropy loss = new SoftmaxCrossEntropy();
+
+        System.out.println(net);
+        System.out.println(loss);
+        checkGradient(net, loss, SparseMatrix.fromDense(X), Y);
+    }
+
+    /**
+     * Create a classification test with activation checkpointing.
+     */
+    public static void testCheckpointedClasification() {
+        DoubleMatrix X = new DoubleMatrix(
+                new double[][] {
+                        {.1f, .1f, .1f, .6f, .1f},
+                        {.5f, .1f, .2f, .1f, .1f},
+                        {.1f, .2f, .2f, .1f, .4f}});
+        DoubleMatrix Y = new DoubleMatrix(new double[] {2., 0., 1.});
+        Sequential net = new Sequential(new Layer[] {
+                new Linear(5, 10, new WeightInitUniform(-1, 1)),
+                new Sigmoid(),
+                new LinearTanh(10, 12, new WeightInitUniform(-1, 1)),
+                new Linear(12, 12, new WeightInitUniform(-1, 1)),
+                new ReLU(),
+                new LinearSigmoid(12, 8, new WeightInitUniform(-1, 1)),
+                new Linear(8, 6, new WeightInitUniform(-1, 1)),
+                new Softmax()});
+        net.setCheckpointing(true);
+        CrossEntropy loss = new CrossEntropy();
+
+        System.out.println(net);
+        System.out.println(loss);
+        checkGradient(net, loss, X, Y);
+    }
+
     public static void main(String[] args) {
         System.out.println("--- Test Classification ---");
         testClasification();
 
+        System.out.println("--- Test Fused Classification ---");
+        testFusedClasification();
+
+        System.out.println("--- Test Sparse Classification ---");
+        testSparseClasification();
+
+        System.out.println("--- Test Checkpointed Classification ---");
+        testCheckpointedClasification();
+
     }
 
 }
@@ -0,0 +1,68 @@
+// File: Parallel.java
+// Parallel helper
+package minet.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helper for splitting a loop over threads of a fork-join pool
+ * (used e.g. by {@link minet.backend.JavaBackend} and the optimizers).
+ * Loops with little work run directly in the calling thread.
+ *
+ * @author Phong Le
+ */
+public class Parallel {
+
+    // loops with less work (roughly, multiply-adds) than this run in the calling thread
+    public static final long PARALLEL_THRESHOLD = 1 << 15;
+
+    /**
+     * A range of work units, [start, end), run by one task.
+     */
+    public interface Range {
+        void run(int start, int end);
+    }
+
+    /**
+     * Run body over [0, n) in parallel chunks.
+     * @param pool the pool running the chunks
+     * @param n the number of work units
+     * @param cost the (rough) amount of work of one unit, to decide how many chunks are worth it
+     * @param body the loop body
+     */
+    public static void parallelFor(ForkJoinPool pool, int n, long cost, Range body) {
+        if (n <= 0)
+            return;
+        long chunks = Math.min(Math.min(n, pool.getParallelism() * 4L), n * cost / PARALLEL_THRESHOLD);
+        if (chunks <= 1) {
+            body.run(0, n);
+        } else {
+            pool.invoke(new RangeTask(body, 0, n, (int) ((n + chunks - 1) / chunks)));
+        }
+    }
+
+    static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 3815293468612305419L;
+
+        final Range body;
+        final int start, end, grain;
+
+        RangeTask(Range body, int start, int end, int grain) {
+            this.body = body;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                body.run(start, end);
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new RangeTask(body, start, mid, grain), new RangeTask(body, mid, end, grain));
+            }
+        }
+    }
+}
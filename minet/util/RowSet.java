@@ -0,0 +1,122 @@
+// File: RowSet.java
+// RowSet class
+package minet.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of rows of a matrix, used to track the rows of a gradient which may be non-zero
+ * (see {@link minet.layer.Layer#getAllGradientRows(java.util.List)}), e.g. the rows of the weight gradient of a
+ * {@link minet.layer.Linear} layer fed with a sparse input, so that an optimizer can skip the other rows.
+ * The set may also contain all the rows (e.g. after a dense backward).
+ * Adding a row takes constant time, and clearing the set takes time proportional to its size.
+ *
+ * @author Phong Le
+ */
+public class RowSet implements java.io.Serializable {
+
+    private static final long serialVersionUID = -2281570143069237765L;
+
+    int nRows;          // the number of rows of the matrix
+    boolean[] member;   // member[r] is true if row r is in rows[0..size)
+    int[] rows;         // the rows added one by one
+    int size;           // the number of rows added one by one
+    boolean all;        // if true, the set contains all the rows
+
+    /**
+     * Create an empty set.
+     * @param nRows the number of rows of the matrix
+     */
+    public RowSet(int nRows) {
+        this.nRows = nRows;
+        this.member = new boolean[nRows];
+        this.rows = new int[16];
+    }
+
+    /**
+     * Add a row.
+     * @param row a row in [0, nRows)
+     */
+    public void add(int row) {
+        if (all || member[row])
+            return;
+        member[row] = true;
+        if (size == rows.length)
+            rows = Arrays.copyOf(rows, 2 * size);
+        rows[size++] = row;
+    }
+
+    /**
+     * Add the columns of the non-zero values of a sparse matrix X, i.e. the rows of X^T * A
+     * which may be non-zero for any A.
+     * @param X a sparse matrix whose number of columns is nRows
+     */
+    public void addColumns(SparseMatrix X) {
+        int[] colIdx = X.colIdx;
+        for (int k = 0; k < X.nnz; k++) {
+            add(colIdx[k]);
+        }
+    }
+
+    /**
+     * Add the rows of another set of rows of the same matrix.
+     * @param other a set, or null for all the rows
+     */
+    public void addAll(RowSet other) {
+        if (other == null || other.all) {
+            all = true;
+            return;
+        }
+        for (int i = 0; i < other.size; i++) {
+            add(other.rows[i]);
+        }
+    }
+
+    /**
+     * Add all the rows.
+     */
+    public void addAll() {
+        all = true;
+    }
+
+    /**
+     * @return true if the set contains all the rows
+     */
+    public boolean containsAll() {
+        return all;
+    }
+
+    /**
+     * @return the number of rows in the set
+     */
+    public int size() {
+        return all ? nRows : size;
+    }
+
+    /**
+     * @return the number of rows of the matrix
+     */
+    public int getNumRows() {
+        return nRows;
+    }
+
+    /**
+     * Get the rows of the set in increasing order (if it does not contain all the rows).
+     * @return an array whose first size() elements are the rows
+     */
+    public int[] getSortedRows() {
+        Arrays.sort(rows, 0, size);
+        return rows;
+    }
+
+    /**
+     * Remove all the rows.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            member[rows[i]] = false;
+        }
+        size = 0;
+        all = false;
+    }
+}
@@ -0,0 +1,161 @@
+// File: SparseMatrix.java
+// SparseMatrix class
+package minet.util;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * A sparse matrix in CSR (compressed sparse row) format, used for mini-batches of sparse inputs
+ * (e.g. bag-of-features vectors). Row i has the non-zero values values[k] at columns colIdx[k],
+ * for rowPtr[i] {@literal <=} k {@literal <} rowPtr[i+1].
+ *
+ * A {@link minet.layer.Linear} layer accepts a SparseMatrix as input, and a {@link minet.data.MatrixDataset}
+ * can produce mini-batches in this format (see {@link minet.data.MatrixDataset#getNextSparseMiniBatch()}).
+ * The matrix is filled row by row with {@link #add(int, double)} and {@link #endRow()};
+ * its arrays grow as needed and are kept by {@link #clear(int)}, so it can be reused from mini-batch to mini-batch.
+ *
+ * @author Phong Le
+ */
+public class SparseMatrix implements java.io.Serializable {
+
+    private static final long serialVersionUID = 6203478115892436102L;
+
+    public int rows;        // number of (finished) rows
+    public int columns;     // number of columns
+    public int nnz;         // number of non-zero values, including those of the row being filled
+    public int[] rowPtr;    // row i is stored at [rowPtr[i], rowPtr[i+1]) in colIdx and values
+    public int[] colIdx;    // column of each non-zero value
+    public double[] values; // non-zero values
+
+    /**
+     * Create an empty matrix (with 0 rows).
+     * @param columns the number of columns
+     */
+    public SparseMatrix(int columns) {
+        this(columns, 16, 16);
+    }
+
+    /**
+     * Create an empty matrix (with 0 rows).
+     * @param columns the number of columns
+     * @param rowCapacity the expected number of rows
+     * @param nnzCapacity the expected number of non-zero values
+     */
+    public SparseMatrix(int columns, int rowCapacity, int nnzCapacity) {
+        this.columns = columns;
+        this.rowPtr = new int[Math.max(rowCapacity, 1) + 1];
+        this.colIdx = new int[Math.max(nnzCapacity, 1)];
+        this.values = new double[Math.max(nnzCapacity, 1)];
+    }
+
+    /**
+     * Remove all the rows, keeping the allocated arrays.
+     * @param columns the new number of columns
+     */
+    public void clear(int columns) {
+        this.columns = columns;
+        this.rows = 0;
+        this.nnz = 0;
+    }
+
+    /**
+     * Append a non-zero value to the row being filled (i.e. row #rows). Columns must be added in increasing order.
+     * @param column the column of the value
+     * @param value the value
+     */
+    public void add(int column, double value) {
+        if (nnz == colIdx.length) {
+            colIdx = Arrays.copyOf(colIdx, 2 * nnz);
+            values = Arrays.copyOf(values, 2 * nnz);
+        }
+        colIdx[nnz] = column;
+        values[nnz] = value;
+        nnz++;
+    }
+
+    /**
+     * Finish the row being filled.
+     */
+    public void endRow() {
+        if (rows + 2 > rowPtr.length)
+            rowPtr = Arrays.copyOf(rowPtr, 2 * rowPtr.length);
+        rows++;
+        rowPtr[rows] = nnz;
+    }
+
+    /**
+     * Append the non-zero values of a row of a dense matrix as a new row.
+     * @param M a matrix with #columns = this.columns
+     * @param row the row of M
+     */
+    public void addRow(DoubleMatrix M, int row) {
+        double[] m = M.data;
+        for (int j = 0, k = row; j < M.columns; j++, k += M.rows) {
+            if (m[k] != 0)
+                add(j, m[k]);
+        }
+        endRow();
+    }
+
+    /**
+     * Convert a dense matrix into a sparse one.
+     * @param M a matrix
+     * @return a new sparse matrix
+     */
+    public static SparseMatrix fromDense(DoubleMatrix M) {
+        SparseMatrix S = new SparseMatrix(M.columns, M.rows, 16);
+        for (int i = 0; i < M.rows; i++) {
+            S.addRow(M, i);
+        }
+        return S;
+    }
+
+    /**
+     * Convert this matrix into a dense one.
+     * @param D the matrix to be filled (can be null, reallocated if it doesn't have the right shape)
+     * @return D
+     */
+    public DoubleMatrix toDense(DoubleMatrix D) {
+        D = Workspace.get(D, rows, columns);
+        D.fill(0);
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                D.data[i + colIdx[k] * rows] = values[k];
+            }
+        }
+        return D;
+    }
+
+    /**
+     * Copy rows [start, end) of this matrix.
+     * @param R the matrix to be filled (can be null)
+     * @return R
+     */
+    public SparseMatrix getRows(int start, int end, SparseMatrix R) {
+        int n = end - start, from = rowPtr[start], count = rowPtr[end] - from;
+        if (R == null)
+            R = new SparseMatrix(columns, n, count);
+        R.clear(columns);
+        if (R.rowPtr.length < n + 1)
+            R.rowPtr = new int[n + 1];
+        if (R.colIdx.length < count) {
+            R.colIdx = new int[count];
+            R.values = new double[count];
+        }
+        System.arraycopy(colIdx, from, R.colIdx, 0, count);
+        System.arraycopy(values, from, R.values, 0, count);
+        for (int i = 0; i <= n; i++) {
+            R.rowPtr[i] = rowPtr[start + i] - from;
+        }
+        R.rows = n;
+        R.nnz = count;
+        return R;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SparseMatrix: %d x %d, %d non-zeros", rows, columns, rowPtr[rows]);
+    }
+}
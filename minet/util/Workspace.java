@@ -0,0 +1,70 @@
+// File: Workspace.java
+// Workspace helper
+package minet.util;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+/**
+ * Helper for the buffers (workspaces) that layers reuse from one mini-batch to the next.
+ * A buffer is reallocated only when the required shape changes (e.g. for the last, smaller
+ * mini-batch of an epoch), so that a steady-state training step does not allocate.
+ *
+ * @author Phong Le
+ */
+public class Workspace {
+
+    /**
+     * Get a matrix of the given shape, reusing the given one if possible.
+     * @param M a matrix (can be null)
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return M if it has the right shape, otherwise a new matrix (the content is undefined)
+     */
+    public static DoubleMatrix get(DoubleMatrix M, int rows, int columns) {
+        if (M == null || M.rows != rows || M.columns != columns)
+            return new DoubleMatrix(rows, columns);
+        return M;
+    }
+
+    /**
+     * Get a single-precision matrix of the given shape, reusing the given one if possible.
+     * @param M a matrix (can be null)
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return M if it has the right shape, otherwise a new matrix (the content is undefined)
+     */
+    public static FloatMatrix get(FloatMatrix M, int rows, int columns) {
+        if (M == null || M.rows != rows || M.columns != columns)
+            return new FloatMatrix(rows, columns);
+        return M;
+    }
+
+    /**
+     * Convert a matrix to single precision.
+     * @param M a matrix
+     * @param F the matrix to be filled (can be null, reallocated if it doesn't have the right shape)
+     * @return F
+     */
+    public static FloatMatrix toFloat(DoubleMatrix M, FloatMatrix F) {
+        F = get(F, M.rows, M.columns);
+        for (int i = 0; i < M.length; i++) {
+            F.data[i] = (float) M.data[i];
+        }
+        return F;
+    }
+
+    /**
+     * Convert a single-precision matrix to double precision.
+     * @param F a single-precision matrix
+     * @param M the matrix to be filled (can be null, reallocated if it doesn't have the right shape)
+     * @return M
+     */
+    public static DoubleMatrix toDouble(FloatMatrix F, DoubleMatrix M) {
+        M = get(M, F.rows, F.columns);
+        for (int i = 0; i < F.length; i++) {
+            M.data[i] = F.data[i];
+        }
+        return M;
+    }
+}